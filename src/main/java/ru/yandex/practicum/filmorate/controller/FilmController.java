@@ -5,12 +5,23 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPatch;
+import ru.yandex.practicum.filmorate.model.LikeQueueStats;
+import ru.yandex.practicum.filmorate.model.LikeStats;
+import ru.yandex.practicum.filmorate.model.MultiGetResponse;
+import ru.yandex.practicum.filmorate.model.SimilarFilm;
+import ru.yandex.practicum.filmorate.service.ExportService;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
 import java.util.*;
 
 @RestController
@@ -21,20 +32,41 @@ import java.util.*;
 public class FilmController {
 
     FilmService filmService;
+    ExportService exportService;
+    FilmImportService filmImportService;
 
     @PostMapping
     public Film create(@Valid @RequestBody Film film) {
         return filmService.create(film);
     }
 
+    @PostMapping("/batch")
+    public List<BatchItemResult> createAll(@RequestBody List<Film> films) {
+        return filmImportService.createAll(films);
+    }
+
     @PutMapping
     public Film update(@Valid @RequestBody Film film) {
         return filmService.update(film);
     }
 
+    @PatchMapping("/{id}")
+    public Film patch(@PathVariable("id") @Positive Long id, @Valid @RequestBody FilmPatch patch) {
+        return filmService.patch(id, patch);
+    }
+
     @GetMapping
-    public List<Film> findAll() {
-        return filmService.findAll();
+    public List<Film> findAll(@RequestParam(required = false) @PositiveOrZero Long after,
+                              @RequestParam(required = false) @Positive Integer limit) {
+        if (after == null && limit == null) {
+            return filmService.findAll();
+        }
+        return filmService.findPage(after, limit);
+    }
+
+    @GetMapping(params = "ids")
+    public MultiGetResponse<Film> findFilmsByIds(@RequestParam List<Long> ids) {
+        return filmService.findFilmsByIds(ids);
     }
 
     @GetMapping("/{id}")
@@ -48,6 +80,17 @@ public class FilmController {
         return filmService.addLike(filmId, userId);
     }
 
+    @GetMapping("{id}/like/{userId}")
+    public boolean hasLiked(@PathVariable("id") @Positive Long filmId,
+                            @PathVariable("userId") @Positive Long userId) {
+        return filmService.hasLiked(filmId, userId);
+    }
+
+    @GetMapping("{id}/likes")
+    public LikeStats findLikeStats(@PathVariable("id") @Positive Long filmId) {
+        return filmService.findFilmLikeStats(filmId);
+    }
+
     @DeleteMapping("{id}/like/{userId}")
     public Film removeLike(
             @PathVariable("id") @Positive Long filmId,
@@ -60,5 +103,37 @@ public class FilmController {
             @RequestParam(defaultValue = "10", required = false) @PositiveOrZero Integer count) {
         return filmService.findPopularFilms(count);
     }
-}
 
+    @GetMapping("{id}/similar")
+    public List<SimilarFilm> findSimilarFilms(
+            @PathVariable("id") @Positive Long filmId,
+            @RequestParam(defaultValue = "10", required = false) @PositiveOrZero Integer count) {
+        return filmService.findSimilarFilms(filmId, count);
+    }
+
+    @GetMapping("/cache/stats")
+    public CacheStats findCacheStats() {
+        return filmService.findCacheStats();
+    }
+
+    @GetMapping("/likes/queue/stats")
+    public LikeQueueStats findLikeQueueStats() {
+        return filmService.findLikeQueueStats();
+    }
+
+    @GetMapping("/export")
+    public void exportFilms(@RequestParam(defaultValue = ExportService.NDJSON) String format,
+                            HttpServletResponse response) throws IOException {
+        exportService.checkFormat(format);
+        response.setContentType(ExportService.NDJSON_CONTENT_TYPE);
+        exportService.exportFilms(response.getOutputStream());
+    }
+
+    @GetMapping("/likes/export")
+    public void exportLikes(@RequestParam(defaultValue = ExportService.NDJSON) String format,
+                            HttpServletResponse response) throws IOException {
+        exportService.checkFormat(format);
+        response.setContentType(ExportService.NDJSON_CONTENT_TYPE);
+        exportService.exportLikes(response.getOutputStream());
+    }
+}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.JournalStats;
+import ru.yandex.practicum.filmorate.storage.StorageJournal;
+
+@RestController
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequestMapping("/storage")
+public class StorageController {
+    // absent unless the "memory" profile is active
+    ObjectProvider<StorageJournal> journal;
+
+    @GetMapping("/journal/stats")
+    public JournalStats findJournalStats() {
+        StorageJournal storageJournal = journal.getIfAvailable();
+        return storageJournal == null ? new JournalStats(false, 0, 0, 0, 0) : storageJournal.getStats();
+    }
+
+}
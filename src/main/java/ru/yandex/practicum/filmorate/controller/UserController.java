@@ -5,11 +5,26 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.FeedItem;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendPath;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.LikeStats;
+import ru.yandex.practicum.filmorate.model.MultiGetResponse;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserPatch;
+import ru.yandex.practicum.filmorate.service.ExportService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserImportService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
 import java.util.*;
 
 @RestController
@@ -19,6 +34,9 @@ import java.util.*;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public class UserController {
     UserService userService;
+    ExportService exportService;
+    UserImportService userImportService;
+    FilmService filmService;
 
     @PostMapping
     public User create(@Valid @RequestBody User user) {
@@ -30,9 +48,23 @@ public class UserController {
         return userService.update(user);
     }
 
+    @PatchMapping("/{id}")
+    public User patch(@PathVariable("id") @Positive Long id, @Valid @RequestBody UserPatch patch) {
+        return userService.patch(id, patch);
+    }
+
     @GetMapping
-    public List<User> findAll() {
-        return userService.findAll();
+    public List<User> findAll(@RequestParam(required = false) @PositiveOrZero Long after,
+                              @RequestParam(required = false) @Positive Integer limit) {
+        if (after == null && limit == null) {
+            return userService.findAll();
+        }
+        return userService.findPage(after, limit);
+    }
+
+    @GetMapping(params = "ids")
+    public MultiGetResponse<User> findUsersByIds(@RequestParam List<Long> ids) {
+        return userService.findUsersByIds(ids);
     }
 
     @GetMapping("/{id}") // GET /users/{id}
@@ -57,6 +89,51 @@ public class UserController {
         return userService.findFriends(userId);
     }
 
+    // GET /users/{id}/friends/suggestions — пользователи, с которыми больше всего общих друзей.
+    @GetMapping("{id}/friends/suggestions")
+    public List<FriendSuggestion> findFriendSuggestions(
+            @PathVariable("id") @Positive Long userId,
+            @RequestParam(defaultValue = "10", required = false) @PositiveOrZero Integer count) {
+        return userService.findFriendSuggestions(userId, count);
+    }
+
+    // GET /users/{id}/path/{otherId} — кратчайшая цепочка друзей между пользователями.
+    @GetMapping("{id}/path/{otherId}")
+    public FriendPath findPath(@PathVariable("id") @Positive Long userId,
+                               @PathVariable("otherId") @Positive Long otherUserId,
+                               @RequestParam(required = false) @Positive Integer maxDepth) {
+        return userService.findPath(userId, otherUserId, maxDepth);
+    }
+
+    // GET /users/{id}/recommendations — фильмы, которые понравились пользователям с похожими лайками.
+    @GetMapping("{id}/recommendations")
+    public List<Film> findRecommendations(
+            @PathVariable("id") @Positive Long userId,
+            @RequestParam(defaultValue = "10", required = false) @PositiveOrZero Integer count) {
+        return filmService.findRecommendations(userId, count);
+    }
+
+    // GET /users/{id}/feed — фильмы, которые недавно лайкнули друзья пользователя.
+    @GetMapping("{id}/feed")
+    public List<FeedItem> findFeed(
+            @PathVariable("id") @Positive Long userId,
+            @RequestParam(defaultValue = "10", required = false) @PositiveOrZero Integer count) {
+        return filmService.findFeed(userId, count);
+    }
+
+    // GET /users/{id}/likes — число лайков пользователя и размер их битовой карты в памяти.
+    @GetMapping("{id}/likes")
+    public LikeStats findLikeStats(@PathVariable("id") @Positive Long userId) {
+        return filmService.findUserLikeStats(userId);
+    }
+
+    // GET /users/{id}/likes/common/{otherId} — фильмы, которые лайкнули оба пользователя.
+    @GetMapping("{id}/likes/common/{otherId}")
+    public List<Film> findCommonLikedFilms(@PathVariable("id") @Positive Long userId,
+                                           @PathVariable("otherId") @Positive Long otherUserId) {
+        return filmService.findCommonLikedFilms(userId, otherUserId);
+    }
+
     // GET /users/{id}/friends/common/{otherId} — список друзей, общих с другим пользователем.
     @GetMapping("{id}/friends/common/{otherId}")
     public List<User> findCommonFriends(@PathVariable("id") @Positive Long userId,
@@ -64,4 +141,29 @@ public class UserController {
         return userService.findCommonFriends(userId, otherUserId);
     }
 
+    @PostMapping("/import")
+    public ImportReport importUsers(HttpServletRequest request) throws IOException {
+        return userImportService.importUsers(request.getInputStream());
+    }
+
+    @PostMapping("/friends/import")
+    public ImportReport importFriendships(HttpServletRequest request) throws IOException {
+        return userImportService.importFriendships(request.getInputStream());
+    }
+
+    @GetMapping("/export")
+    public void exportUsers(@RequestParam(defaultValue = ExportService.NDJSON) String format,
+                            HttpServletResponse response) throws IOException {
+        exportService.checkFormat(format);
+        response.setContentType(ExportService.NDJSON_CONTENT_TYPE);
+        exportService.exportUsers(response.getOutputStream());
+    }
+
+    @GetMapping("/friends/export")
+    public void exportFriendships(@RequestParam(defaultValue = ExportService.NDJSON) String format,
+                                  HttpServletResponse response) throws IOException {
+        exportService.checkFormat(format);
+        response.setContentType(ExportService.NDJSON_CONTENT_TYPE);
+        exportService.exportFriendships(response.getOutputStream());
+    }
 }
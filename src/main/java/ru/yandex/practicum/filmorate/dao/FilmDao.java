@@ -1,21 +1,49 @@
 package ru.yandex.practicum.filmorate.dao;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPatch;
+import ru.yandex.practicum.filmorate.model.Like;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface FilmDao {
     Film create(Film film);
 
+    List<Long> createAll(List<Film> films);
+
     Film update(Film film);
 
+    int patch(Long id, FilmPatch patch);
+
     List<Film> findAll();
 
+    List<Film> findPage(long afterId, int limit);
+
     Film findFilmById(Long id);
 
+    List<Film> findFilmsByIds(Collection<Long> ids);
+
     Film addLike(Long filmId, Long userId);
 
     Film removeLike(Long filmId, Long userId);
 
+    // Writes likes and unlikes of known films and users at once; ones already in place change nothing.
+    void saveLikes(List<Like> added, List<Like> removed);
+
     void checkFilmExistence(Long id);
+
+    Map<Long, Integer> findLikeCounts();
+
+    List<Film> findTopByLikes(int limit);
+
+    // Returns ids of films whose stored like count was wrong and has been recounted.
+    List<Long> repairLikeCounts();
+
+    void forEachFilm(Consumer<Film> consumer);
+
+    // Streams every like; the order is up to the implementation.
+    void forEachLike(Consumer<Like> consumer);
 }
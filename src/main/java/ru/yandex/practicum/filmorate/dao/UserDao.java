@@ -1,21 +1,35 @@
 package ru.yandex.practicum.filmorate.dao;
 
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserPatch;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserDao {
 
     User create(User user);
 
+    void createAll(List<User> users);
+
     User update(User user);
 
+    int patch(Long id, UserPatch patch);
+
     List<User> findAll();
 
+    List<User> findPage(long afterId, int limit);
+
     User findUserById(Long id);
 
+    List<User> findUsersByIds(Collection<Long> ids);
+
     void addFriend(Long userId, Long friendId);
 
+    void addFriendships(List<Friendship> friendships);
+
     List<User> findFriends(Long userId);
 
     List<User> findCommonFriends(Long userId, Long otherUserId);
@@ -23,4 +37,8 @@ public interface UserDao {
     User removeFriend(Long userId, Long friendId);
 
     void checkUserExistence(Long id);
+
+    void forEachUser(Consumer<User> consumer);
+
+    void forEachFriendship(Consumer<Friendship> consumer);
 }
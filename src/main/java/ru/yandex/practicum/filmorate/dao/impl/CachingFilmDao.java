@@ -0,0 +1,253 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPatch;
+import ru.yandex.practicum.filmorate.model.Like;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// LRU cache of films by id, bounded by size and TTL. Writes go to FilmDaoImpl and then drop the
+// cached entry. Each write also moves the stamp of the film's stripe, and a reader that missed
+// caches what it loaded only if the stamp has not moved since before the load. So the cache never
+// serves a film older than the last write made through this node, whatever order concurrent
+// writers and readers finish in.
+// Cached films are shared between callers and must not be modified.
+@Component
+@Profile("!memory")
+@Primary
+public class CachingFilmDao implements FilmDao {
+
+    private final FilmDaoImpl filmDao;
+    private final int maxSize;
+    private final long ttlMillis;
+
+    private final LinkedHashMap<Long, CachedFilm> films;
+    // write stamps of film id stripes, guarded by this
+    private final long[] writeStamps = new long[256];
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public CachingFilmDao(FilmDaoImpl filmDao,
+                          @Value("${filmorate.cache.films.max-size:10000}") int maxSize,
+                          @Value("${filmorate.cache.films.ttl-ms:600000}") long ttlMillis) {
+        this.filmDao = filmDao;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.films = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedFilm> eldest) {
+                if (size() > CachingFilmDao.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Film create(Film film) {
+        return put(filmDao.create(film));
+    }
+
+    @Override
+    public List<Long> createAll(List<Film> films) {
+        return filmDao.createAll(films);
+    }
+
+    @Override
+    public Film update(Film film) {
+        return invalidate(filmDao.update(film));
+    }
+
+    @Override
+    public int patch(Long id, FilmPatch patch) {
+        int updated = filmDao.patch(id, patch);
+        invalidate(id);
+        return updated;
+    }
+
+    @Override
+    public List<Film> findAll() {
+        return filmDao.findAll();
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return filmDao.findPage(afterId, limit);
+    }
+
+    @Override
+    public Film findFilmById(Long id) {
+        Film film = get(id);
+        if (film == null) {
+            long stamp = stamp(id);
+            film = putIfUnchanged(filmDao.findFilmById(id), stamp);
+        }
+        return film;
+    }
+
+    @Override
+    public List<Film> findFilmsByIds(Collection<Long> ids) {
+        Map<Long, Film> found = new HashMap<>();
+        Map<Long, Long> missed = new HashMap<>();
+        for (Long id : ids) {
+            Film film = get(id);
+            if (film != null) {
+                found.put(id, film);
+            } else {
+                missed.put(id, stamp(id));
+            }
+        }
+        for (Film film : filmDao.findFilmsByIds(missed.keySet())) {
+            found.put(film.getId(), putIfUnchanged(film, missed.get(film.getId())));
+        }
+        List<Film> films = new ArrayList<>();
+        for (Long id : ids) {
+            Film film = found.get(id);
+            if (film != null) {
+                films.add(film);
+            }
+        }
+        return films;
+    }
+
+    @Override
+    public Film addLike(Long filmId, Long userId) {
+        return invalidate(filmDao.addLike(filmId, userId));
+    }
+
+    @Override
+    public Film removeLike(Long filmId, Long userId) {
+        return invalidate(filmDao.removeLike(filmId, userId));
+    }
+
+    @Override
+    public void saveLikes(List<Like> added, List<Like> removed) {
+        filmDao.saveLikes(added, removed);
+        synchronized (this) {
+            added.forEach(like -> invalidate(like.getFilmId()));
+            removed.forEach(like -> invalidate(like.getFilmId()));
+        }
+    }
+
+    @Override
+    public void checkFilmExistence(Long id) {
+        if (!isCached(id)) {
+            filmDao.checkFilmExistence(id);
+        }
+    }
+
+    @Override
+    public Map<Long, Integer> findLikeCounts() {
+        return filmDao.findLikeCounts();
+    }
+
+    @Override
+    public List<Film> findTopByLikes(int limit) {
+        return filmDao.findTopByLikes(limit);
+    }
+
+    @Override
+    public List<Long> repairLikeCounts() {
+        List<Long> repaired = filmDao.repairLikeCounts();
+        synchronized (this) {
+            repaired.forEach(this::invalidate);
+        }
+        return repaired;
+    }
+
+    @Override
+    public void forEachFilm(Consumer<Film> consumer) {
+        filmDao.forEachFilm(consumer);
+    }
+
+    @Override
+    public void forEachLike(Consumer<Like> consumer) {
+        filmDao.forEachLike(consumer);
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, films.size(), maxSize, ttlMillis);
+    }
+
+    private synchronized Film get(Long id) {
+        CachedFilm cached = films.get(id);
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        if (System.currentTimeMillis() - cached.loadedAt > ttlMillis) {
+            films.remove(id);
+            evictions++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.film;
+    }
+
+    // Existence checks are not film reads: they leave the hit and miss counts and the LRU order alone.
+    // Films are never deleted, so even an expired entry proves the film exists.
+    private synchronized boolean isCached(Long id) {
+        return films.containsKey(id);
+    }
+
+    private synchronized Film put(Film film) {
+        films.put(film.getId(), new CachedFilm(film, System.currentTimeMillis()));
+        return film;
+    }
+
+    private synchronized long stamp(Long id) {
+        return writeStamps[stripe(id)];
+    }
+
+    // Called after the write has committed, so a reader that loaded before it sees the stamp moved.
+    private synchronized void invalidate(Long id) {
+        writeStamps[stripe(id)]++;
+        films.remove(id);
+    }
+
+    private Film invalidate(Film film) {
+        invalidate(film.getId());
+        return film;
+    }
+
+    // A reader that missed caches its film only if no write to the film's stripe has committed since
+    // the stamp was taken, and never overwrites an entry another reader has put meanwhile.
+    private synchronized Film putIfUnchanged(Film film, long stamp) {
+        if (writeStamps[stripe(film.getId())] != stamp) {
+            return film;
+        }
+        CachedFilm cached = films.putIfAbsent(film.getId(), new CachedFilm(film, System.currentTimeMillis()));
+        return cached == null ? film : cached.film;
+    }
+
+    private int stripe(Long id) {
+        return (int) (id & (writeStamps.length - 1));
+    }
+
+    private static final class CachedFilm {
+        private final Film film;
+        private final long loadedAt;
+
+        private CachedFilm(Film film, long loadedAt) {
+            this.film = film;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.dao.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.GenreDao;
+import ru.yandex.practicum.filmorate.dao.MpaDao;
+import ru.yandex.practicum.filmorate.exceptions.GenreNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.MpaRatingNotFoundException;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+
+// Genres and MPA ratings are loaded once and shared: every film points to the same Genre/Mpa instances.
+// Call reload() after changing filmorate.genre or filmorate.mpa_rating.
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class DictionaryCache {
+
+    private final GenreDao genreDao;
+    private final MpaDao mpaDao;
+
+    private volatile Dictionaries dictionaries;
+
+    @PostConstruct
+    public void reload() {
+        List<Genre> genres = genreDao.findAll();
+        List<Mpa> mpaRatings = mpaDao.findAll();
+
+        int maxGenreId = 0;
+        for (Genre genre : genres) {
+            maxGenreId = Math.max(maxGenreId, genre.getId().intValue());
+        }
+        Genre[] genresById = new Genre[maxGenreId + 1];
+        for (Genre genre : genres) {
+            genresById[genre.getId().intValue()] = genre;
+        }
+
+        int maxMpaId = 0;
+        for (Mpa mpa : mpaRatings) {
+            maxMpaId = Math.max(maxMpaId, mpa.getId().intValue());
+        }
+        Mpa[] mpaById = new Mpa[maxMpaId + 1];
+        for (Mpa mpa : mpaRatings) {
+            mpaById[mpa.getId().intValue()] = mpa;
+        }
+
+        dictionaries = new Dictionaries(genresById, Collections.unmodifiableList(genres),
+                mpaById, Collections.unmodifiableList(mpaRatings));
+        log.info("Dictionaries loaded: " + genres.size() + " genres, " + mpaRatings.size() + " MPA ratings.");
+    }
+
+    public List<Genre> findAllGenres() {
+        return dictionaries.genres;
+    }
+
+    public Genre findGenreById(Long id) {
+        Genre[] genresById = dictionaries.genresById;
+        if (id == null || id <= 0 || id >= genresById.length || genresById[id.intValue()] == null) {
+            throw new GenreNotFoundException("Genre with id \"" + id + "\" not found.");
+        }
+        return genresById[id.intValue()];
+    }
+
+    public List<Mpa> findAllMpa() {
+        return dictionaries.mpaRatings;
+    }
+
+    public Mpa findMpaById(Long id) {
+        Mpa[] mpaById = dictionaries.mpaById;
+        if (id == null || id <= 0 || id >= mpaById.length || mpaById[id.intValue()] == null) {
+            throw new MpaRatingNotFoundException("MPA rating with id \"" + id + "\" not found.");
+        }
+        return mpaById[id.intValue()];
+    }
+
+    Genre[] genresById() {
+        return dictionaries.genresById;
+    }
+
+    private static final class Dictionaries {
+        private final Genre[] genresById;
+        private final List<Genre> genres;
+        private final Mpa[] mpaById;
+        private final List<Mpa> mpaRatings;
+
+        private Dictionaries(Genre[] genresById, List<Genre> genres, Mpa[] mpaById, List<Mpa> mpaRatings) {
+            this.genresById = genresById;
+            this.genres = genres;
+            this.mpaById = mpaById;
+            this.mpaRatings = mpaRatings;
+        }
+    }
+
+}
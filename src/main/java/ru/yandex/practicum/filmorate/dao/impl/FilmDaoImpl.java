@@ -1,36 +1,57 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dao.FilmDao;
 import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.CustomValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPatch;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Like;
 
-import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Component
+@Profile("!memory")
 @RequiredArgsConstructor
 public class FilmDaoImpl implements FilmDao {
 
+    private static final String SQL_SELECT_FILMS = "select f.film_id, f.name as film_name, f.description, " +
+            "f.release_date, f.duration, f.mpa_rating_id, f.rate " +
+            "from filmorate.films as f ";
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
     private final UserDaoImpl userDao;
+    private final DictionaryCache dictionaryCache;
 
     @Override
+    @Transactional
     public Film create(Film film) throws CustomValidationException {
-        final String sqlFilm = "insert into filmorate.films(name, description, release_date, duration, mpa_rating_id, rate) " +
-                "values(?,?,?,?,?,?);";
+        final String sqlFilm = "insert into filmorate.films(name, description, release_date, duration, mpa_rating_id) " +
+                "values(?,?,?,?,?);";
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
 
@@ -41,32 +62,21 @@ public class FilmDaoImpl implements FilmDao {
             stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
             stmt.setInt(4, film.getDuration());
             stmt.setLong(5, film.getMpa().getId());
-            stmt.setInt(6, film.getRate());
             return stmt;
         }, keyHolder);
 
         Long key = Objects.requireNonNull(keyHolder.getKey()).longValue();
 
-        if (!film.getGenres().isEmpty()) {
-            for (Genre genre : film.getGenres()) {
-                final String sqlGenres = "insert into filmorate.films_genre_link(film_id, genre_id) " +
-                        "values(?,?);";
-                jdbcTemplate.update(connection -> {
-                    PreparedStatement stmt = connection.prepareStatement((sqlGenres));
-                    stmt.setInt(1, key.intValue());
-                    stmt.setInt(2, genre.getId().intValue());
-                    return stmt;
-                });
-            }
-        }
+        insertGenres(key, genreIds(film.getGenres()));
         return findFilmById(key);
     }
 
     @Override
+    @Transactional
     public Film update(Film film) {
         String sqlFilmUpdate = "update filmorate.films set name = ?, " +
                 "description = ?, release_date = ?, duration = ?, " +
-                "mpa_rating_id = ?, rate = ?" +
+                "mpa_rating_id = ?" +
                 " where film_id = ?";
 
         jdbcTemplate.update(connection -> {
@@ -76,104 +86,267 @@ public class FilmDaoImpl implements FilmDao {
             stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
             stmt.setInt(4, film.getDuration());
             stmt.setLong(5, film.getMpa().getId());
-            stmt.setInt(6, film.getRate());
-            stmt.setLong(7, film.getId());
+            stmt.setLong(6, film.getId());
             return stmt;
         });
 
-        // delete genres
-        final String sqlGenresDelete = "delete from filmorate.films_genre_link " +
-                "where film_id = " + film.getId();
-        jdbcTemplate.update(sqlGenresDelete);
-
-        // record genre list
-        if (!film.getGenres().isEmpty()) {
-            for (Genre genre : film.getGenres()) {
-                final String sqlGenres = "insert into filmorate.films_genre_link(film_id, genre_id) " +
-                        "values(?,?);";
-                jdbcTemplate.update(connection -> {
-                    PreparedStatement stmt = connection.prepareStatement((sqlGenres));
-                    stmt.setInt(1, film.getId().intValue());
-                    stmt.setInt(2, genre.getId().intValue());
-                    return stmt;
-                });
+        replaceGenres(film.getId(), genreIds(film.getGenres()));
+        return findFilmById(film.getId());
+    }
+
+    // Only the columns present in the patch are written. Returns the number of updated film rows.
+    @Override
+    @Transactional
+    public int patch(Long id, FilmPatch patch) {
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        if (patch.getName() != null) {
+            columns.add("name = ?");
+            values.add(patch.getName());
+        }
+        if (patch.getDescription() != null) {
+            columns.add("description = ?");
+            values.add(patch.getDescription());
+        }
+        if (patch.getReleaseDate() != null) {
+            columns.add("release_date = ?");
+            values.add(Date.valueOf(patch.getReleaseDate()));
+        }
+        if (patch.getDuration() != null) {
+            columns.add("duration = ?");
+            values.add(patch.getDuration());
+        }
+        if (patch.getMpa() != null) {
+            columns.add("mpa_rating_id = ?");
+            values.add(patch.getMpa().getId());
+        }
+        int updated = 0;
+        if (!columns.isEmpty()) {
+            values.add(id);
+            String sql = "update filmorate.films set " + String.join(", ", columns) + " where film_id = ?";
+            updated = jdbcTemplate.update(sql, values.toArray());
+        }
+        if (patch.getGenres() != null) {
+            replaceGenres(id, genreIds(patch.getGenres()));
+        }
+        return updated;
+    }
+
+    // only the difference between stored and requested genres is written
+    private void replaceGenres(Long filmId, Set<Long> requestedGenreIds) {
+        final String sqlStoredGenres = "select genre_id from filmorate.films_genre_link where film_id = ?";
+        Set<Long> storedGenreIds = new HashSet<>(jdbcTemplate.queryForList(sqlStoredGenres, Long.class, filmId));
+
+        List<Object[]> removedGenres = new ArrayList<>();
+        for (Long genreId : storedGenreIds) {
+            if (!requestedGenreIds.contains(genreId)) {
+                removedGenres.add(new Object[]{filmId, genreId});
             }
         }
-        return findFilmById(film.getId());
+        if (!removedGenres.isEmpty()) {
+            final String sqlGenresDelete = "delete from filmorate.films_genre_link " +
+                    "where film_id = ? and genre_id = ?";
+            jdbcTemplate.batchUpdate(sqlGenresDelete, removedGenres);
+        }
+
+        requestedGenreIds.removeAll(storedGenreIds);
+        insertGenres(filmId, requestedGenreIds);
     }
 
+    // Films and their genre links are inserted with two JDBC batches; generated ids are read from
+    // the batch itself, so the films are not re-read.
     @Override
-    public List<Film> findAll() {
-        final String sql = "select f.film_id, f.name as film_name, f.description, f.release_date, f.duration, " +
-                "m.mpa_rating_id, m.name as mpa_name, json_arrayagg(json_object(" +
-                "  KEY 'id' VALUE g.genre_id," +
-                "  KEY 'name' VALUE g.name" +
-                ")) as genres, " +
-                " COUNT(lk.user_id) as rate " +
-                "from filmorate.films as f " +
-                "left join filmorate.mpa_rating as m on f.mpa_rating_id = m.mpa_rating_id " +
-                "left join filmorate.films_genre_link as fgl on f.film_id = fgl.film_id " +
-                "left join filmorate.genre as g on fgl.genre_id = g.genre_id " +
-                "left join filmorate.likes_films_users_link as lk on lk.film_id = f.film_id " +
-                "group by f.film_id ";
+    @Transactional
+    public List<Long> createAll(List<Film> films) {
+        final String sqlFilm = "insert into filmorate.films(name, description, release_date, duration, mpa_rating_id) " +
+                "values(?,?,?,?,?)";
+        List<Long> ids = jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            List<Long> keys = new ArrayList<>(films.size());
+            try (PreparedStatement stmt = connection.prepareStatement(sqlFilm, new String[]{"film_id"})) {
+                for (Film film : films) {
+                    stmt.setString(1, film.getName());
+                    stmt.setString(2, film.getDescription());
+                    stmt.setDate(3, Date.valueOf(film.getReleaseDate()));
+                    stmt.setInt(4, film.getDuration());
+                    stmt.setLong(5, film.getMpa().getId());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    while (generatedKeys.next()) {
+                        keys.add(generatedKeys.getLong(1));
+                    }
+                }
+            }
+            return keys;
+        });
+        if (ids == null || ids.size() != films.size()) {
+            throw new IllegalStateException("Expected " + films.size() + " generated film ids, got " +
+                    (ids == null ? 0 : ids.size()) + ".");
+        }
 
-        List<Optional<Film>> queryResult = jdbcTemplate.query(sql, this::mapRowToFilm);
-        List<Film> films = new ArrayList<>();
-        for (Optional<Film> optionalFilm : queryResult) {
-            optionalFilm.ifPresent(films::add);
+        final String sqlGenres = "insert into filmorate.films_genre_link(film_id, genre_id) " +
+                "values(?,?)";
+        List<Object[]> genreLinks = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            for (Long genreId : genreIds(films.get(i).getGenres())) {
+                genreLinks.add(new Object[]{ids.get(i), genreId});
+            }
         }
-        return films;
+        if (!genreLinks.isEmpty()) {
+            jdbcTemplate.batchUpdate(sqlGenres, genreLinks);
+        }
+        return ids;
+    }
+
+    private Set<Long> genreIds(Collection<Genre> genres) {
+        Set<Long> genreIds = new LinkedHashSet<>();
+        for (Genre genre : genres) {
+            genreIds.add(genre.getId());
+        }
+        return genreIds;
+    }
+
+    private void insertGenres(Long filmId, Collection<Long> genreIds) {
+        if (genreIds.isEmpty()) {
+            return;
+        }
+        final String sqlGenres = "insert into filmorate.films_genre_link(film_id, genre_id) " +
+                "values(?,?)";
+        List<Object[]> batchArgs = new ArrayList<>();
+        for (Long genreId : genreIds) {
+            batchArgs.add(new Object[]{filmId, genreId});
+        }
+        jdbcTemplate.batchUpdate(sqlGenres, batchArgs);
     }
 
     @Override
-    public Film findFilmById(Long id) {
+    public List<Film> findAll() {
+        final String sql = SQL_SELECT_FILMS + "order by f.film_id";
+        List<Film> films = mapFilms(jdbcTemplate.query(sql, this::mapRowToFilm));
+        fillGenres(films, true);
+        return films;
+    }
 
-        final String sql = "select f.film_id, f.name as film_name, f.description, f.release_date, f.duration, " +
-                "m.mpa_rating_id, m.name as mpa_name, json_arrayagg(json_object(" +
-                "  KEY 'id' VALUE g.genre_id," +
-                "  KEY 'name' VALUE g.name" +
-                ")) as genres, " +
-                " COUNT(lk.user_id) as rate " +
-                "from filmorate.films as f " +
-                "left join filmorate.mpa_rating as m on f.mpa_rating_id = m.mpa_rating_id " +
-                "left join filmorate.films_genre_link as fgl on f.film_id = fgl.film_id " +
-                "left join filmorate.genre as g on fgl.genre_id = g.genre_id " +
-                "left join filmorate.likes_films_users_link as lk on lk.film_id = f.film_id " +
-                "where f.film_id = ? " +
-                "group by f.film_id ";
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        final String sql = SQL_SELECT_FILMS + "where f.film_id > ? order by f.film_id limit ?";
+        List<Film> films = mapFilms(jdbcTemplate.query(sql, this::mapRowToFilm, afterId, limit));
+        fillGenres(films, false);
+        return films;
+    }
 
-        Optional<Film> optionalFilm = jdbcTemplate.queryForObject(sql, this::mapRowToFilm, id);
-        if (optionalFilm.isEmpty()) {
+    @Override
+    public Film findFilmById(Long id) {
+        final String sql = SQL_SELECT_FILMS + "where f.film_id = ?";
+        List<Film> films = mapFilms(jdbcTemplate.query(sql, this::mapRowToFilm, id));
+        if (films.isEmpty()) {
             throw new FilmNotFoundException("Film with id \"" + id + "\" not found.");
-        } else {
-            return optionalFilm.get();
         }
+        fillGenres(films, false);
+        return films.get(0);
     }
 
+    // The like row and films.rate change in one transaction. The counter is moved by an increment
+    // in the database, so concurrent likes of one film never overwrite each other's count.
     @Override
+    @Transactional
     public Film addLike(Long filmId, Long userId) {
         checkFilmExistence(filmId);
         userDao.checkUserExistence(userId);
-        String sql = "insert into filmorate.likes_films_users_link(film_id, user_id) " +
-                "values(?,?)";
-        jdbcTemplate.update(connection -> {
-            PreparedStatement stmt = connection.prepareStatement(sql);
-            stmt.setInt(1, filmId.intValue());
-            stmt.setInt(2, userId.intValue());
-            return stmt;
-        });
+        final String sql = "insert into filmorate.likes_films_users_link(film_id, user_id) values(?,?)";
+        try {
+            jdbcTemplate.update(sql, filmId, userId);
+            jdbcTemplate.update("update filmorate.films set rate = rate + 1 where film_id = ?", filmId);
+        } catch (DuplicateKeyException e) {
+            // a repeated like is a no-op; the unique key rejects only this statement, not the transaction
+        }
         return findFilmById(filmId);
     }
 
+    @Override
+    @Transactional
     public Film removeLike(Long filmId, Long userId) {
         checkFilmExistence(filmId);
         userDao.checkUserExistence(userId);
         final String sql = "delete from filmorate.likes_films_users_link " +
                 "where film_id = ? and user_id = ?";
-        jdbcTemplate.update(sql, filmId, userId);
+        if (jdbcTemplate.update(sql, filmId, userId) > 0) {
+            jdbcTemplate.update("update filmorate.films set rate = rate - 1 where film_id = ?", filmId);
+        }
         return findFilmById(filmId);
     }
 
+    // Each kind of change is one JDBC batch, all in one transaction. Row counts of the batches tell
+    // which likes really changed, and only those move films.rate.
+    @Override
+    @Transactional
+    public void saveLikes(List<Like> added, List<Like> removed) {
+        Map<Long, Integer> deltas = new HashMap<>();
+        if (!added.isEmpty()) {
+            final String sqlInsert = "insert into filmorate.likes_films_users_link(film_id, user_id, liked_at) " +
+                    "select cast(? as integer), cast(? as integer), cast(? as timestamp) " +
+                    "where not exists (select 1 from filmorate.likes_films_users_link " +
+                    "where film_id = ? and user_id = ?)";
+            List<Object[]> batchArgs = new ArrayList<>(added.size());
+            for (Like like : added) {
+                batchArgs.add(new Object[]{like.getFilmId(), like.getUserId(), Timestamp.valueOf(like.getLikedAt()),
+                        like.getFilmId(), like.getUserId()});
+            }
+            countChanges(added, jdbcTemplate.batchUpdate(sqlInsert, batchArgs), 1, deltas);
+        }
+        if (!removed.isEmpty()) {
+            final String sqlDelete = "delete from filmorate.likes_films_users_link " +
+                    "where film_id = ? and user_id = ?";
+            List<Object[]> batchArgs = new ArrayList<>(removed.size());
+            for (Like like : removed) {
+                batchArgs.add(new Object[]{like.getFilmId(), like.getUserId()});
+            }
+            countChanges(removed, jdbcTemplate.batchUpdate(sqlDelete, batchArgs), -1, deltas);
+        }
+        List<Object[]> rateArgs = new ArrayList<>();
+        deltas.forEach((filmId, delta) -> {
+            if (delta != 0) {
+                rateArgs.add(new Object[]{delta, filmId});
+            }
+        });
+        if (!rateArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate("update filmorate.films set rate = rate + ? where film_id = ?", rateArgs);
+        }
+    }
+
+    private static void countChanges(List<Like> likes, int[] rowCounts, int delta, Map<Long, Integer> deltas) {
+        for (int i = 0; i < rowCounts.length; i++) {
+            if (rowCounts[i] > 0) {
+                deltas.merge(likes.get(i).getFilmId(), delta, Integer::sum);
+            }
+        }
+    }
+
+    // Recounts likes of every film and writes the count where films.rate has drifted from it.
+    @Override
+    @Transactional
+    public List<Long> repairLikeCounts() {
+        final String sqlCounts = "select f.film_id, f.rate, COUNT(lk.user_id) as likes " +
+                "from filmorate.films as f " +
+                "left join filmorate.likes_films_users_link as lk on lk.film_id = f.film_id " +
+                "group by f.film_id, f.rate " +
+                "having f.rate <> COUNT(lk.user_id)";
+        List<Long> drifted = jdbcTemplate.query(sqlCounts, (resultSet, rowNum) -> resultSet.getLong("film_id"));
+        if (!drifted.isEmpty()) {
+            final String sqlRepair = "update filmorate.films as f " +
+                    "set rate = (select COUNT(*) from filmorate.likes_films_users_link as lk " +
+                    "where lk.film_id = f.film_id) " +
+                    "where f.film_id = ?";
+            List<Object[]> batchArgs = new ArrayList<>();
+            for (Long id : drifted) {
+                batchArgs.add(new Object[]{id});
+            }
+            jdbcTemplate.batchUpdate(sqlRepair, batchArgs);
+        }
+        return drifted;
+    }
+
     private Optional<Film> mapRowToFilm(ResultSet resultSet, int rowNum) throws SQLException {
         Film film = Film.builder()
                 .id(resultSet.getLong("film_id"))
@@ -181,27 +354,59 @@ public class FilmDaoImpl implements FilmDao {
                 .description(resultSet.getString("description"))
                 .releaseDate(resultSet.getDate("release_date").toLocalDate())
                 .duration(resultSet.getInt("duration"))
-                .mpa(new Mpa(resultSet.getLong("mpa_rating_id"),
-                        resultSet.getString("mpa_name")))
                 .rate(resultSet.getInt("rate"))
                 .build();
+        long mpaId = resultSet.getLong("mpa_rating_id");
+        if (!resultSet.wasNull()) {
+            film.setMpa(dictionaryCache.findMpaById(mpaId));
+        }
+        return Optional.of(film);
+    }
 
-        String genresString = resultSet.getString("genres");
+    private List<Film> mapFilms(List<Optional<Film>> queryResult) {
+        List<Film> films = new ArrayList<>();
+        for (Optional<Film> optionalFilm : queryResult) {
+            optionalFilm.ifPresent(films::add);
+        }
+        return films;
+    }
 
-        final ObjectMapper objectMapper = new ObjectMapper();
-        Genre[] genres = new Genre[10];
-        try {
-            genres = objectMapper.readValue(genresString, Genre[].class);
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Rate is read with the film row; only genres are aggregated.
+    private void fillGenres(List<Film> films, boolean allFilms) {
+        if (films.isEmpty()) {
+            return;
         }
-        for (Genre genre : genres) {
-            if (genre != null) {
-                if (genre.getId() != null)
-                    film.getGenres().add(genre);
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+        }
+        String where = "";
+        Object[] args = new Object[0];
+        if (!allFilms) {
+            where = "where film_id in (" + String.join(", ", Collections.nCopies(films.size(), "?")) + ") ";
+            args = filmsById.keySet().toArray();
+        }
+
+        final String sqlGenres = "select film_id, array_agg(genre_id order by genre_id) as genre_ids " +
+                "from filmorate.films_genre_link " +
+                where +
+                "group by film_id";
+        jdbcTemplate.query(sqlGenres, (RowCallbackHandler) resultSet -> {
+            Film film = filmsById.get(resultSet.getLong("film_id"));
+            if (film != null) {
+                Object[] genreIds = (Object[]) resultSet.getArray("genre_ids").getArray();
+                decodeGenres(genreIds, dictionaryCache.genresById(), film.getGenres());
+            }
+        }, args);
+    }
+
+    static void decodeGenres(Object[] genreIds, Genre[] dictionary, Set<Genre> genres) {
+        for (Object genreId : genreIds) {
+            int id = ((Number) genreId).intValue();
+            if (id > 0 && id < dictionary.length && dictionary[id] != null) {
+                genres.add(dictionary[id]);
             }
         }
-        return Optional.of(film);
     }
 
     @Override
@@ -215,4 +420,82 @@ public class FilmDaoImpl implements FilmDao {
         }
     }
 
+    @Override
+    public Map<Long, Integer> findLikeCounts() {
+        final String sql = "select film_id, rate from filmorate.films";
+        Map<Long, Integer> counts = new HashMap<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) resultSet ->
+                counts.put(resultSet.getLong("film_id"), resultSet.getInt("rate")));
+        return counts;
+    }
+
+    @Override
+    public List<Film> findTopByLikes(int limit) {
+        final String sqlTop = "select film_id " +
+                "from filmorate.films " +
+                "order by rate desc, film_id " +
+                "limit ?";
+        return findFilmsByIds(jdbcTemplate.queryForList(sqlTop, Long.class, limit));
+    }
+
+    // Films come back in the order of ids; ids without a film are skipped.
+    @Override
+    public List<Film> findFilmsByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final String sql = SQL_SELECT_FILMS +
+                "where f.film_id in (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        List<Film> films = mapFilms(jdbcTemplate.query(sql, this::mapRowToFilm, ids.toArray()));
+        fillGenres(films, false);
+
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+        }
+        List<Film> ordered = new ArrayList<>();
+        for (Long id : ids) {
+            Film film = filmsById.get(id);
+            if (film != null) {
+                ordered.add(film);
+            }
+        }
+        return ordered;
+    }
+
+    // Genres come from a correlated subquery so every film is complete as soon as its row
+    // is read, and rows are handed to the consumer one by one instead of being collected into a list.
+    @Override
+    public void forEachFilm(Consumer<Film> consumer) {
+        final String sql = "select f.film_id, f.name as film_name, f.description, " +
+                "f.release_date, f.duration, f.mpa_rating_id, f.rate, " +
+                "(select array_agg(fgl.genre_id order by fgl.genre_id) " +
+                " from filmorate.films_genre_link as fgl where fgl.film_id = f.film_id) as genre_ids " +
+                "from filmorate.films as f " +
+                "order by f.film_id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sql);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, (RowCallbackHandler) resultSet -> {
+            Film film = mapRowToFilm(resultSet, 0).orElseThrow();
+            Array genreIds = resultSet.getArray("genre_ids");
+            if (genreIds != null) {
+                decodeGenres((Object[]) genreIds.getArray(), dictionaryCache.genresById(), film.getGenres());
+            }
+            consumer.accept(film);
+        });
+    }
+
+    @Override
+    public void forEachLike(Consumer<Like> consumer) {
+        final String sql = "select film_id, user_id, liked_at from filmorate.likes_films_users_link order by id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sql);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, (RowCallbackHandler) resultSet ->
+                consumer.accept(new Like(resultSet.getLong("film_id"), resultSet.getLong("user_id"),
+                        resultSet.getTimestamp("liked_at").toLocalDateTime())));
+    }
 }
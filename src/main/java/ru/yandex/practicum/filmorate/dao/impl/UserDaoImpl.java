@@ -1,27 +1,40 @@
 package ru.yandex.practicum.filmorate.dao.impl;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dao.UserDao;
 import ru.yandex.practicum.filmorate.exceptions.CustomValidationException;
 import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserPatch;
 
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Component
+@Profile("!memory")
 @RequiredArgsConstructor
 public class UserDaoImpl implements UserDao {
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
 
     @Override
@@ -46,13 +59,58 @@ public class UserDaoImpl implements UserDao {
         return findUserById(key);
     }
 
+    @Override
+    @Transactional
+    public void createAll(List<User> users) {
+        String sql = "insert into filmorate.users(email, login, name, birthday) " +
+                "values(?,?,?,?)";
+        List<Object[]> rows = new ArrayList<>(users.size());
+        for (User user : users) {
+            rows.add(new Object[]{user.getEmail(), user.getLogin(), user.getName(), Date.valueOf(user.getBirthday())});
+        }
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
+    // user_id is the primary key, so exactly one row is updated, or none for an unknown user.
     @Override
     public User update(User user) {
-        String sql = "update filmorate.users set user_id = ?, email = ?, " +
-                "login = ?, name = ?, birthday = ?";
-        jdbcTemplate.update(sql, user.getId(), user.getEmail(),
-                user.getLogin(), user.getName(), user.getBirthday());
-        return findUserById(user.getId());
+        String sql = "update filmorate.users set email = ?, " +
+                "login = ?, name = ?, birthday = ? where user_id = ?";
+        int updated = jdbcTemplate.update(sql, user.getEmail(),
+                user.getLogin(), user.getName(), user.getBirthday(), user.getId());
+        if (updated != 1) {
+            throw new UserNotFoundException("User with id \"" + user.getId() + "\" not found.");
+        }
+        return user;
+    }
+
+    // Only the columns present in the patch are written. Returns the number of updated rows.
+    @Override
+    public int patch(Long id, UserPatch patch) {
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        if (patch.getEmail() != null) {
+            columns.add("email = ?");
+            values.add(patch.getEmail());
+        }
+        if (patch.getLogin() != null) {
+            columns.add("login = ?");
+            values.add(patch.getLogin());
+        }
+        if (patch.getName() != null) {
+            columns.add("name = ?");
+            values.add(patch.getName());
+        }
+        if (patch.getBirthday() != null) {
+            columns.add("birthday = ?");
+            values.add(Date.valueOf(patch.getBirthday()));
+        }
+        if (columns.isEmpty()) {
+            return 0;
+        }
+        values.add(id);
+        String sql = "update filmorate.users set " + String.join(", ", columns) + " where user_id = ?";
+        return jdbcTemplate.update(sql, values.toArray());
     }
 
     @Override
@@ -66,6 +124,17 @@ public class UserDaoImpl implements UserDao {
         return users;
     }
 
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        String sql = "select * from filmorate.users where user_id > ? order by user_id limit ?";
+        List<Optional<User>> queryResult = jdbcTemplate.query(sql, this::mapRowToUser, afterId, limit);
+        List<User> users = new ArrayList<>();
+        for (Optional<User> optionalUser : queryResult) {
+            optionalUser.ifPresent(users::add);
+        }
+        return users;
+    }
+
     @Override
     public User findUserById(Long id) {
         final String sql = "select * from filmorate.users where USER_ID = ?";
@@ -77,8 +146,30 @@ public class UserDaoImpl implements UserDao {
         }
     }
 
+    @Override
+    public List<User> findUsersByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final String sql = "select * from filmorate.users where user_id in (" +
+                String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        Map<Long, User> usersById = new HashMap<>();
+        for (Optional<User> optionalUser : jdbcTemplate.query(sql, this::mapRowToUser, ids.toArray())) {
+            optionalUser.ifPresent(user -> usersById.put(user.getId(), user));
+        }
+        List<User> users = new ArrayList<>();
+        for (Long id : ids) {
+            User user = usersById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
     public void addFriend(Long userId, Long friendId) {
-        String sql = "insert into filmorate.friendship_user_to_user_link(USER_ID, friend_id) " +
+        // a repeated friend request is a no-op
+        String sql = "merge into filmorate.friendship_user_to_user_link(USER_ID, friend_id) key(user_id, friend_id) " +
                 "values(?,?)";
 
         jdbcTemplate.update(connection -> {
@@ -89,6 +180,18 @@ public class UserDaoImpl implements UserDao {
         });
     }
 
+    @Override
+    @Transactional
+    public void addFriendships(List<Friendship> friendships) {
+        String sql = "merge into filmorate.friendship_user_to_user_link(USER_ID, friend_id) key(user_id, friend_id) " +
+                "values(?,?)";
+        List<Object[]> rows = new ArrayList<>(friendships.size());
+        for (Friendship friendship : friendships) {
+            rows.add(new Object[]{friendship.getUserId(), friendship.getFriendId()});
+        }
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
     @Override
     public List<User> findFriends(Long userId) {
         final String sql = "select * " +
@@ -148,4 +251,24 @@ public class UserDaoImpl implements UserDao {
         }
     }
 
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        final String sql = "select * from filmorate.users order by user_id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sql);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, (RowCallbackHandler) resultSet -> consumer.accept(mapRowToUser(resultSet, 0).orElseThrow()));
+    }
+
+    @Override
+    public void forEachFriendship(Consumer<Friendship> consumer) {
+        final String sql = "select user_id, friend_id from filmorate.friendship_user_to_user_link order by id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sql);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, (RowCallbackHandler) resultSet ->
+                consumer.accept(new Friendship(resultSet.getLong("user_id"), resultSet.getLong("friend_id"))));
+    }
 }
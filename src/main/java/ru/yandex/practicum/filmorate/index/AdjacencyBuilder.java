@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Collects edges in any order and turns them into sorted, duplicate-free adjacency arrays.
+class AdjacencyBuilder {
+    private final Map<Long, long[]> ids = new HashMap<>();
+    private final Map<Long, Integer> sizes = new HashMap<>();
+    long edges;
+
+    void add(long key, long id) {
+        long[] keyIds = ids.getOrDefault(key, SortedLongArrays.EMPTY);
+        int size = sizes.getOrDefault(key, 0);
+        if (size == keyIds.length) {
+            keyIds = Arrays.copyOf(keyIds, Math.max(4, size * 2));
+            ids.put(key, keyIds);
+        }
+        keyIds[size] = id;
+        sizes.put(key, size + 1);
+        edges++;
+    }
+
+    void buildInto(Map<Long, long[]> adjacency) {
+        ids.forEach((key, keyIds) -> {
+            long[] sorted = Arrays.stream(keyIds, 0, sizes.get(key)).sorted().distinct().toArray();
+            adjacency.put(key, sorted);
+        });
+    }
+
+}
@@ -0,0 +1,361 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+
+import javax.annotation.PostConstruct;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Films recently liked by a user's friends. The last likes of every user are kept in a bounded
+// timeline. A reader with few friends gets the feed by merging the friends' timelines on read.
+// A reader with more than pushThreshold friends gets an inbox, filled once from the timelines on
+// the first read and then fed on every like of a friend (fan-out on write), so their reads do
+// not grow with the number of friends. Inboxes are dropped when the reader's friends change.
+// The newest inboxSize likes are ranked either way: films by the likes of friends, each like
+// weighted down by its age with halfLifeHours.
+// Timelines start small and grow up to their size, since most users like only a few films.
+@Component
+@Slf4j
+public class FriendFeed {
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+
+    private final FilmDao filmDao;
+    private final FriendGraph friendGraph;
+    private final int timelineSize;
+    private final int inboxSize;
+    private final int pushThreshold;
+    private final double halfLifeHours;
+
+    private final Map<Long, Timeline> timelines = new ConcurrentHashMap<>();
+    private final Map<Long, Timeline> inboxes = new ConcurrentHashMap<>();
+
+    public FriendFeed(FilmDao filmDao,
+                      FriendGraph friendGraph,
+                      @Value("${filmorate.feed.timeline-size:100}") int timelineSize,
+                      @Value("${filmorate.feed.inbox-size:1000}") int inboxSize,
+                      @Value("${filmorate.feed.push-threshold:100}") int pushThreshold,
+                      @Value("${filmorate.feed.half-life-hours:24}") double halfLifeHours) {
+        this.filmDao = filmDao;
+        this.friendGraph = friendGraph;
+        this.timelineSize = timelineSize;
+        this.inboxSize = inboxSize;
+        this.pushThreshold = pushThreshold;
+        this.halfLifeHours = halfLifeHours;
+    }
+
+    // Likes come in no particular time order, so each is put in its place by time, as the live
+    // timelines would have it.
+    @PostConstruct
+    public synchronized void rebuild() {
+        timelines.clear();
+        inboxes.clear();
+        long[] likes = {0};
+        filmDao.forEachLike(like -> {
+            timelines.computeIfAbsent(like.getUserId(), userId -> new Timeline(timelineSize))
+                    .addInOrder(like.getFilmId(), like.getUserId(),
+                            like.getLikedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            likes[0]++;
+        });
+        log.info("Friend feed built, users: " + timelines.size() + ", likes: " + likes[0]);
+    }
+
+    public synchronized void addLike(long userId, long filmId, long likedAt) {
+        // a repeated like keeps its first time, as the like table does
+        if (!timelines.computeIfAbsent(userId, id -> new Timeline(timelineSize)).addIfAbsent(filmId, userId, likedAt)
+                || inboxes.isEmpty()) {
+            return;
+        }
+        for (long follower : friendGraph.findFollowers(userId)) {
+            Timeline inbox = inboxes.get(follower);
+            if (inbox != null) {
+                inbox.add(filmId, userId, likedAt);
+            }
+        }
+    }
+
+    public synchronized void removeLike(long userId, long filmId) {
+        Timeline timeline = timelines.get(userId);
+        if (timeline != null) {
+            timeline.remove(filmId, userId);
+        }
+        if (inboxes.isEmpty()) {
+            return;
+        }
+        for (long follower : friendGraph.findFollowers(userId)) {
+            Timeline inbox = inboxes.get(follower);
+            if (inbox != null) {
+                inbox.remove(filmId, userId);
+            }
+        }
+    }
+
+    // Called after FriendGraph has changed. Synchronized with createInbox, so an inbox merged from the old
+    // friend list is either dropped here or not installed before the change.
+    public synchronized void friendsChanged(long userId) {
+        inboxes.remove(userId);
+    }
+
+    public boolean hasInbox(long userId) {
+        return inboxes.containsKey(userId);
+    }
+
+    public List<Item> findFeed(long userId, int count, long now) {
+        long[] friends = friendGraph.findFriends(userId);
+        Entries entries;
+        if (friends.length > pushThreshold) {
+            Timeline inbox = inboxes.get(userId);
+            if (inbox == null) {
+                inbox = createInbox(userId);
+            }
+            entries = inbox.snapshot();
+        } else {
+            entries = merge(friends, inboxSize);
+        }
+        return rank(entries, count, now);
+    }
+
+    // Synchronized with the writers, so no like of a friend falls between the merge and the first push.
+    private synchronized Timeline createInbox(long userId) {
+        Timeline inbox = inboxes.get(userId);
+        if (inbox == null) {
+            inbox = new Timeline(inboxSize);
+            Entries entries = merge(friendGraph.findFriends(userId), inboxSize);
+            for (int i = 0; i < entries.size; i++) {
+                inbox.add(entries.films[i], entries.users[i], entries.times[i]);
+            }
+            inboxes.put(userId, inbox);
+        }
+        return inbox;
+    }
+
+    // The newest limit likes from the friends' timelines, oldest first. Timelines are ordered by time,
+    // so they are merged from their newest ends with a heap of timelines.
+    private Entries merge(long[] friends, int limit) {
+        List<Entries> parts = new ArrayList<>(friends.length);
+        for (long friend : friends) {
+            Timeline timeline = timelines.get(friend);
+            if (timeline != null) {
+                parts.add(timeline.snapshot());
+            }
+        }
+        int[] cursors = new int[parts.size()];
+        PriorityQueue<Integer> newest = new PriorityQueue<>(Math.max(1, parts.size()), (a, b) -> Long.compare(
+                parts.get(b).times[cursors[b]], parts.get(a).times[cursors[a]]));
+        int total = 0;
+        for (int part = 0; part < parts.size(); part++) {
+            cursors[part] = parts.get(part).size - 1;
+            total += parts.get(part).size;
+            if (cursors[part] >= 0) {
+                newest.add(part);
+            }
+        }
+
+        Entries merged = new Entries(Math.min(limit, total));
+        for (int k = merged.films.length - 1; k >= 0; k--) {
+            int part = newest.poll();
+            int i = cursors[part]--;
+            merged.films[k] = parts.get(part).films[i];
+            merged.users[k] = parts.get(part).users[i];
+            merged.times[k] = parts.get(part).times[i];
+            if (cursors[part] >= 0) {
+                newest.add(part);
+            }
+        }
+        merged.size = merged.films.length;
+        return merged;
+    }
+
+    private List<Item> rank(Entries entries, int count, long now) {
+        // film id in the high bits, entry position in the low ones: sorting groups the likes by film
+        long[] byFilm = new long[entries.size];
+        for (int i = 0; i < entries.size; i++) {
+            byFilm[i] = entries.films[i] << 32 | i;
+        }
+        Arrays.sort(byFilm);
+
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < byFilm.length; ) {
+            long filmId = byFilm[i] >>> 32;
+            int j = i;
+            while (j < byFilm.length && byFilm[j] >>> 32 == filmId) {
+                j++;
+            }
+            long[] userIds = new long[j - i];
+            double score = 0;
+            long lastLikedAt = Long.MIN_VALUE;
+            for (int k = i; k < j; k++) {
+                int entry = (int) byFilm[k];
+                userIds[k - i] = entries.users[entry];
+                score += Math.pow(0.5, Math.max(0, now - entries.times[entry]) / (halfLifeHours * MILLIS_PER_HOUR));
+                lastLikedAt = Math.max(lastLikedAt, entries.times[entry]);
+            }
+            Arrays.sort(userIds);
+            items.add(new Item(filmId, userIds, lastLikedAt, score));
+            i = j;
+        }
+        items.sort((a, b) -> a.score != b.score
+                ? Double.compare(b.score, a.score)
+                : Long.compare(b.lastLikedAt, a.lastLikedAt));
+        return items.size() > count ? new ArrayList<>(items.subList(0, count)) : items;
+    }
+
+    public static final class Item {
+        private final long filmId;
+        private final long[] userIds;
+        private final long lastLikedAt;
+        private final double score;
+
+        private Item(long filmId, long[] userIds, long lastLikedAt, double score) {
+            this.filmId = filmId;
+            this.userIds = userIds;
+            this.lastLikedAt = lastLikedAt;
+            this.score = score;
+        }
+
+        public long getFilmId() {
+            return filmId;
+        }
+
+        // Friends who liked the film, ascending.
+        public long[] getUserIds() {
+            return userIds.clone();
+        }
+
+        public long getLastLikedAt() {
+            return lastLikedAt;
+        }
+    }
+
+    private static final class Entries {
+        private final long[] films;
+        private final long[] users;
+        private final long[] times;
+        private int size;
+
+        private Entries(int capacity) {
+            films = new long[capacity];
+            users = new long[capacity];
+            times = new long[capacity];
+        }
+    }
+
+    // Ring buffer of the last capacity likes, oldest first. The arrays grow by doubling up to capacity.
+    private static final class Timeline {
+        private static final int INITIAL_CAPACITY = 4;
+
+        private final int capacity;
+        private long[] films;
+        private long[] users;
+        private long[] times;
+        private int start;
+        private int size;
+
+        private Timeline(int capacity) {
+            this.capacity = capacity;
+            int initial = Math.min(capacity, INITIAL_CAPACITY);
+            films = new long[initial];
+            users = new long[initial];
+            times = new long[initial];
+        }
+
+        private synchronized boolean addIfAbsent(long filmId, long userId, long time) {
+            for (int i = 0; i < size; i++) {
+                int slot = (start + i) % films.length;
+                if (films[slot] == filmId && users[slot] == userId) {
+                    return false;
+                }
+            }
+            add(filmId, userId, time);
+            return true;
+        }
+
+        private synchronized void add(long filmId, long userId, long time) {
+            if (size == films.length && size < capacity) {
+                grow();
+            }
+            int slot;
+            if (size == films.length) {
+                slot = start;
+                start = (start + 1) % films.length;
+            } else {
+                slot = (start + size++) % films.length;
+            }
+            films[slot] = filmId;
+            users[slot] = userId;
+            times[slot] = time;
+        }
+
+        // Adds the like after the newer ones are moved up; a like older than a full timeline is dropped.
+        private synchronized void addInOrder(long filmId, long userId, long time) {
+            if (size == capacity && time < times[start]) {
+                return;
+            }
+            add(filmId, userId, time);
+            for (int i = size - 1; i > 0; i--) {
+                int slot = (start + i) % films.length;
+                int previous = (start + i - 1) % films.length;
+                if (times[previous] <= time) {
+                    break;
+                }
+                films[slot] = films[previous];
+                users[slot] = users[previous];
+                times[slot] = times[previous];
+                films[previous] = filmId;
+                users[previous] = userId;
+                times[previous] = time;
+            }
+        }
+
+        private void grow() {
+            int length = Math.min(capacity, films.length * 2);
+            films = unrolled(films, length);
+            users = unrolled(users, length);
+            times = unrolled(times, length);
+            start = 0;
+        }
+
+        private long[] unrolled(long[] ring, int length) {
+            long[] grown = new long[length];
+            int head = Math.min(size, ring.length - start);
+            System.arraycopy(ring, start, grown, 0, head);
+            System.arraycopy(ring, 0, grown, head, size - head);
+            return grown;
+        }
+
+        private synchronized void remove(long filmId, long userId) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int from = (start + i) % films.length;
+                if (films[from] == filmId && users[from] == userId) {
+                    continue;
+                }
+                int to = (start + kept++) % films.length;
+                films[to] = films[from];
+                users[to] = users[from];
+                times[to] = times[from];
+            }
+            size = kept;
+        }
+
+        private synchronized Entries snapshot() {
+            Entries entries = new Entries(size);
+            for (int i = 0; i < size; i++) {
+                int slot = (start + i) % films.length;
+                entries.films[i] = films[slot];
+                entries.users[i] = users[slot];
+                entries.times[i] = times[slot];
+            }
+            entries.size = size;
+            return entries;
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.UserDao;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Friend ids of every user as sorted long arrays, same direction as friendship_user_to_user_link
+// (user_id -> friend_id), plus the reverse direction for searches that walk back from a user.
+// Arrays are never modified after they are published: writers replace them, so readers need no lock.
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class FriendGraph {
+    private static final long[] NO_FRIENDS = SortedLongArrays.EMPTY;
+    private static final long NO_PARENT = -1;
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+    private final UserDao userDao;
+
+    private final Map<Long, long[]> friends = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> followers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        AdjacencyBuilder loadedFriends = new AdjacencyBuilder();
+        AdjacencyBuilder loadedFollowers = new AdjacencyBuilder();
+        userDao.forEachFriendship(friendship -> {
+            loadedFriends.add(friendship.getUserId(), friendship.getFriendId());
+            loadedFollowers.add(friendship.getFriendId(), friendship.getUserId());
+        });
+
+        friends.clear();
+        loadedFriends.buildInto(friends);
+        followers.clear();
+        loadedFollowers.buildInto(followers);
+        log.info("Friend graph built, users: " + friends.size() + ", friendships: " + loadedFriends.edges);
+    }
+
+    public synchronized void addFriend(long userId, long friendId) {
+        SortedLongArrays.insert(friends, userId, friendId);
+        SortedLongArrays.insert(followers, friendId, userId);
+    }
+
+    public synchronized void removeFriend(long userId, long friendId) {
+        SortedLongArrays.delete(friends, userId, friendId);
+        SortedLongArrays.delete(followers, friendId, userId);
+    }
+
+    public long[] findFriends(long userId) {
+        return friends.getOrDefault(userId, NO_FRIENDS).clone();
+    }
+
+    // Users who have userId as a friend.
+    public long[] findFollowers(long userId) {
+        return followers.getOrDefault(userId, NO_FRIENDS).clone();
+    }
+
+    // Linear merge of two sorted arrays.
+    public long[] findCommonFriends(long userId, long otherUserId) {
+        long[] first = friends.getOrDefault(userId, NO_FRIENDS);
+        long[] second = friends.getOrDefault(otherUserId, NO_FRIENDS);
+        long[] common = new long[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    // Friends of friends ranked by the number of mutual friends (desc), then by id (asc), existing friends
+    // excluded. At most maxFanOut friends are followed on each hop, so the work is bounded by
+    // maxFanOut^2 whatever the degrees are; they are sampled evenly over the sorted friend list, so
+    // high ids are followed as often as low ones. Returns user id -> mutual friends in rank order.
+    public Map<Long, Integer> findSuggestions(long userId, int limit, int maxFanOut) {
+        long[] own = friends.getOrDefault(userId, NO_FRIENDS);
+        long[] firstHop = sample(own, maxFanOut);
+        long[][] secondHop = new long[firstHop.length][];
+        int total = 0;
+        for (int i = 0; i < firstHop.length; i++) {
+            secondHop[i] = sample(friends.getOrDefault(firstHop[i], NO_FRIENDS), maxFanOut);
+            total += secondHop[i].length;
+        }
+        long[] candidates = new long[total];
+        int size = 0;
+        for (long[] ids : secondHop) {
+            System.arraycopy(ids, 0, candidates, size, ids.length);
+            size += ids.length;
+        }
+        Arrays.sort(candidates);
+
+        long[] ranked = new long[size];
+        int rankedSize = 0;
+        int i = 0;
+        while (i < size) {
+            long candidate = candidates[i];
+            int j = i;
+            while (j < size && candidates[j] == candidate) {
+                j++;
+            }
+            if (candidate != userId && Arrays.binarySearch(own, candidate) < 0) {
+                ranked[rankedSize++] = SortedLongArrays.rankKey(j - i, candidate);
+            }
+            i = j;
+        }
+        Arrays.sort(ranked, 0, rankedSize);
+
+        Map<Long, Integer> suggestions = new LinkedHashMap<>();
+        for (int k = rankedSize - 1; k >= 0 && suggestions.size() < limit; k--) {
+            suggestions.put(SortedLongArrays.rankedId(ranked[k]), SortedLongArrays.rankedCount(ranked[k]));
+        }
+        return suggestions;
+    }
+
+    // Every (length / count)-th id, spread over the whole array.
+    private static long[] sample(long[] ids, int count) {
+        if (ids.length <= count) {
+            return ids;
+        }
+        long[] sampled = new long[count];
+        for (int i = 0; i < count; i++) {
+            sampled[i] = ids[(int) ((long) i * ids.length / count)];
+        }
+        return sampled;
+    }
+
+    // Bidirectional BFS: the side with the smaller frontier is expanded one level at a time, forward
+    // over friends from userId and backward over followers from otherUserId, until the two meet.
+    // Visited users are kept in primitive hash maps (user -> previous user on the path).
+    public PathResult findPath(long userId, long otherUserId, int maxDepth, int maxNodes, long timeoutMillis) {
+        if (userId == otherUserId) {
+            return new PathResult(new long[]{userId}, false);
+        }
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        LongLongMap forwardParents = new LongLongMap();
+        LongLongMap backwardParents = new LongLongMap();
+        forwardParents.putIfAbsent(userId, NO_PARENT);
+        backwardParents.putIfAbsent(otherUserId, NO_PARENT);
+        long[] forwardFrontier = {userId};
+        long[] backwardFrontier = {otherUserId};
+        int checked = 0;
+
+        for (int depth = 0; depth < maxDepth; depth++) {
+            boolean forward = forwardFrontier.length <= backwardFrontier.length;
+            Map<Long, long[]> edges = forward ? friends : followers;
+            LongLongMap parents = forward ? forwardParents : backwardParents;
+            LongLongMap otherParents = forward ? backwardParents : forwardParents;
+            long[] frontier = forward ? forwardFrontier : backwardFrontier;
+
+            long[] next = new long[16];
+            int nextSize = 0;
+            for (long current : frontier) {
+                for (long neighbour : edges.getOrDefault(current, NO_FRIENDS)) {
+                    if (!parents.putIfAbsent(neighbour, current)) {
+                        continue;
+                    }
+                    if (otherParents.containsKey(neighbour)) {
+                        return new PathResult(joinPath(neighbour, forwardParents, backwardParents), false);
+                    }
+                    if (nextSize == next.length) {
+                        next = Arrays.copyOf(next, nextSize * 2);
+                    }
+                    next[nextSize++] = neighbour;
+                    if (forwardParents.size() + backwardParents.size() > maxNodes) {
+                        return new PathResult(NO_FRIENDS, true);
+                    }
+                    if (++checked % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                        return new PathResult(NO_FRIENDS, true);
+                    }
+                }
+            }
+            if (nextSize == 0) {
+                break;
+            }
+            if (forward) {
+                forwardFrontier = Arrays.copyOf(next, nextSize);
+            } else {
+                backwardFrontier = Arrays.copyOf(next, nextSize);
+            }
+        }
+        return new PathResult(NO_FRIENDS, false);
+    }
+
+    private static long[] joinPath(long meeting, LongLongMap forwardParents, LongLongMap backwardParents) {
+        long[] path = new long[forwardParents.size() + backwardParents.size()];
+        int size = 0;
+        for (long user = meeting; user != NO_PARENT; user = forwardParents.get(user)) {
+            path[size++] = user;
+        }
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            long swap = path[i];
+            path[i] = path[j];
+            path[j] = swap;
+        }
+        for (long user = backwardParents.get(meeting); user != NO_PARENT; user = backwardParents.get(user)) {
+            path[size++] = user;
+        }
+        return Arrays.copyOf(path, size);
+    }
+
+    public static final class PathResult {
+        private final long[] userIds;
+        private final boolean budgetExceeded;
+
+        private PathResult(long[] userIds, boolean budgetExceeded) {
+            this.userIds = userIds;
+            this.budgetExceeded = budgetExceeded;
+        }
+
+        // Empty when there is no path within the depth or the search ran out of budget.
+        public long[] getUserIds() {
+            return userIds.clone();
+        }
+
+        public boolean isBudgetExceeded() {
+            return budgetExceeded;
+        }
+    }
+
+}
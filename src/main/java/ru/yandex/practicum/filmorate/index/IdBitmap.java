@@ -0,0 +1,296 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+
+// Roaring-style compressed set of non-negative int ids. Ids are split by their high 16 bits into
+// containers of the low 16 bits: a sorted char array while the container has up to ARRAY_MAX values,
+// a 65536-bit bitmap above that, so a container never takes more than 8 KB.
+// Bitmaps are immutable: with/without return a new bitmap that shares every container but the changed one.
+final class IdBitmap {
+    static final IdBitmap EMPTY = new IdBitmap(new char[0], new Object[0], 0);
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+    // rough JVM sizes: object header, array header, reference
+    private static final int OBJECT_BYTES = 16;
+    private static final int ARRAY_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    private final char[] keys;
+    // char[] for array containers, long[] for bitmap containers
+    private final Object[] containers;
+    private final int cardinality;
+
+    private IdBitmap(char[] keys, Object[] containers, int cardinality) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinality = cardinality;
+    }
+
+    // ids must be sorted ascending and distinct.
+    static IdBitmap of(long[] ids) {
+        char[] keys = new char[16];
+        Object[] containers = new Object[16];
+        int size = 0;
+        for (int from = 0; from < ids.length; ) {
+            char key = high(ids[from]);
+            int to = from;
+            while (to < ids.length && high(ids[to]) == key) {
+                to++;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            keys[size] = key;
+            if (to - from <= ARRAY_MAX) {
+                char[] values = new char[to - from];
+                for (int i = from; i < to; i++) {
+                    values[i - from] = low(ids[i]);
+                }
+                containers[size++] = values;
+            } else {
+                long[] words = new long[WORDS];
+                for (int i = from; i < to; i++) {
+                    words[low(ids[i]) >>> 6] |= 1L << low(ids[i]);
+                }
+                containers[size++] = words;
+            }
+            from = to;
+        }
+        return new IdBitmap(Arrays.copyOf(keys, size), Arrays.copyOf(containers, size), ids.length);
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    int containerCount() {
+        return keys.length;
+    }
+
+    long sizeInBytes() {
+        long bytes = OBJECT_BYTES + ARRAY_BYTES + 2L * keys.length + ARRAY_BYTES + (long) REFERENCE_BYTES * keys.length;
+        for (Object container : containers) {
+            bytes += ARRAY_BYTES + (container instanceof char[] ? 2L * ((char[]) container).length : 8L * WORDS);
+        }
+        return bytes;
+    }
+
+    boolean contains(long id) {
+        int index = Arrays.binarySearch(keys, high(id));
+        if (index < 0) {
+            return false;
+        }
+        Object container = containers[index];
+        if (container instanceof char[]) {
+            return Arrays.binarySearch((char[]) container, low(id)) >= 0;
+        }
+        return (((long[]) container)[low(id) >>> 6] & 1L << low(id)) != 0;
+    }
+
+    IdBitmap with(long id) {
+        char low = low(id);
+        int index = Arrays.binarySearch(keys, high(id));
+        if (index < 0) {
+            int at = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Object[] newContainers = new Object[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(containers, 0, newContainers, 0, at);
+            newKeys[at] = high(id);
+            newContainers[at] = new char[]{low};
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(containers, at, newContainers, at + 1, keys.length - at);
+            return new IdBitmap(newKeys, newContainers, cardinality + 1);
+        }
+
+        Object container = containers[index];
+        Object changed;
+        if (container instanceof char[]) {
+            char[] values = (char[]) container;
+            int at = Arrays.binarySearch(values, low);
+            if (at >= 0) {
+                return this;
+            }
+            at = -at - 1;
+            if (values.length < ARRAY_MAX) {
+                char[] newValues = new char[values.length + 1];
+                System.arraycopy(values, 0, newValues, 0, at);
+                newValues[at] = low;
+                System.arraycopy(values, at, newValues, at + 1, values.length - at);
+                changed = newValues;
+            } else {
+                long[] words = new long[WORDS];
+                for (char value : values) {
+                    words[value >>> 6] |= 1L << value;
+                }
+                words[low >>> 6] |= 1L << low;
+                changed = words;
+            }
+        } else {
+            long[] words = (long[]) container;
+            if ((words[low >>> 6] & 1L << low) != 0) {
+                return this;
+            }
+            long[] newWords = words.clone();
+            newWords[low >>> 6] |= 1L << low;
+            changed = newWords;
+        }
+        Object[] newContainers = containers.clone();
+        newContainers[index] = changed;
+        return new IdBitmap(keys, newContainers, cardinality + 1);
+    }
+
+    IdBitmap without(long id) {
+        char low = low(id);
+        int index = Arrays.binarySearch(keys, high(id));
+        if (index < 0) {
+            return this;
+        }
+
+        Object container = containers[index];
+        Object changed;
+        if (container instanceof char[]) {
+            char[] values = (char[]) container;
+            int at = Arrays.binarySearch(values, low);
+            if (at < 0) {
+                return this;
+            }
+            if (values.length == 1) {
+                char[] newKeys = new char[keys.length - 1];
+                Object[] newContainers = new Object[keys.length - 1];
+                System.arraycopy(keys, 0, newKeys, 0, index);
+                System.arraycopy(containers, 0, newContainers, 0, index);
+                System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+                System.arraycopy(containers, index + 1, newContainers, index, keys.length - index - 1);
+                return new IdBitmap(newKeys, newContainers, cardinality - 1);
+            }
+            char[] newValues = new char[values.length - 1];
+            System.arraycopy(values, 0, newValues, 0, at);
+            System.arraycopy(values, at + 1, newValues, at, values.length - at - 1);
+            changed = newValues;
+        } else {
+            long[] words = (long[]) container;
+            if ((words[low >>> 6] & 1L << low) == 0) {
+                return this;
+            }
+            long[] newWords = words.clone();
+            newWords[low >>> 6] &= ~(1L << low);
+            int count = 0;
+            for (long word : newWords) {
+                count += Long.bitCount(word);
+            }
+            if (count > ARRAY_MAX) {
+                changed = newWords;
+            } else {
+                char[] values = new char[count];
+                int size = 0;
+                for (int word = 0; word < WORDS; word++) {
+                    for (long bits = newWords[word]; bits != 0; bits &= bits - 1) {
+                        values[size++] = (char) (word << 6 | Long.numberOfTrailingZeros(bits));
+                    }
+                }
+                changed = values;
+            }
+        }
+        Object[] newContainers = containers.clone();
+        newContainers[index] = changed;
+        return new IdBitmap(keys, newContainers, cardinality - 1);
+    }
+
+    long[] toArray() {
+        long[] ids = new long[cardinality];
+        int size = 0;
+        for (int i = 0; i < keys.length; i++) {
+            size = append(keys[i], containers[i], ids, size);
+        }
+        return ids;
+    }
+
+    long[] and(IdBitmap other) {
+        long[] ids = new long[Math.min(cardinality, other.cardinality)];
+        int size = 0;
+        for (int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                size = appendAnd(keys[i], containers[i++], other.containers[j++], ids, size);
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    private static int append(char key, Object container, long[] ids, int size) {
+        long base = (long) key << 16;
+        if (container instanceof char[]) {
+            for (char value : (char[]) container) {
+                ids[size++] = base | value;
+            }
+            return size;
+        }
+        long[] words = (long[]) container;
+        for (int word = 0; word < WORDS; word++) {
+            for (long bits = words[word]; bits != 0; bits &= bits - 1) {
+                ids[size++] = base | word << 6 | Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return size;
+    }
+
+    private static int appendAnd(char key, Object first, Object second, long[] ids, int size) {
+        long base = (long) key << 16;
+        if (first instanceof long[] && second instanceof long[]) {
+            long[] a = (long[]) first;
+            long[] b = (long[]) second;
+            for (int word = 0; word < WORDS; word++) {
+                for (long bits = a[word] & b[word]; bits != 0; bits &= bits - 1) {
+                    ids[size++] = base | word << 6 | Long.numberOfTrailingZeros(bits);
+                }
+            }
+            return size;
+        }
+        if (first instanceof long[]) {
+            Object swap = first;
+            first = second;
+            second = swap;
+        }
+        char[] values = (char[]) first;
+        if (second instanceof long[]) {
+            long[] words = (long[]) second;
+            for (char value : values) {
+                if ((words[value >>> 6] & 1L << value) != 0) {
+                    ids[size++] = base | value;
+                }
+            }
+            return size;
+        }
+        char[] others = (char[]) second;
+        for (int i = 0, j = 0; i < values.length && j < others.length; ) {
+            if (values[i] < others[j]) {
+                i++;
+            } else if (values[i] > others[j]) {
+                j++;
+            } else {
+                ids[size++] = base | values[i];
+                i++;
+                j++;
+            }
+        }
+        return size;
+    }
+
+    private static char high(long id) {
+        if (id < 0 || id > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Id " + id + " is out of the bitmap range.");
+        }
+        return (char) (id >>> 16);
+    }
+
+    private static char low(long id) {
+        return (char) id;
+    }
+
+}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+
+// Growing set of ids kept as a compressed bitmap. Writers replace the bitmap, so readers need no lock.
+public class IdSet {
+
+    private volatile IdBitmap bitmap;
+
+    public IdSet(long[] ids) {
+        long[] sorted = Arrays.stream(ids).sorted().distinct().toArray();
+        bitmap = IdBitmap.of(sorted);
+    }
+
+    public boolean contains(long id) {
+        return bitmap.contains(id);
+    }
+
+    public synchronized void add(long id) {
+        bitmap = bitmap.with(id);
+    }
+
+    public int size() {
+        return bitmap.cardinality();
+    }
+
+}
@@ -0,0 +1,145 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+// The like graph of the node, loaded once from the like table: compressed bitmaps of user ids per film
+// and of film ids per user. Like counts, "did the user like the film" and the films two users both liked
+// are answered here, and LikesMatrix and SimilarFilmsIndex read the likers and liked films from here
+// instead of keeping their own copies.
+// Bitmaps are immutable, writers replace them, so readers need no lock.
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class LikesBitmapIndex {
+
+    private final FilmDao filmDao;
+
+    private final Map<Long, IdBitmap> usersByFilm = new ConcurrentHashMap<>();
+    private final Map<Long, IdBitmap> filmsByUser = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        AdjacencyBuilder loadedUsers = new AdjacencyBuilder();
+        AdjacencyBuilder loadedFilms = new AdjacencyBuilder();
+        filmDao.forEachLike(like -> {
+            loadedUsers.add(like.getFilmId(), like.getUserId());
+            loadedFilms.add(like.getUserId(), like.getFilmId());
+        });
+        usersByFilm.clear();
+        filmsByUser.clear();
+        build(loadedUsers, usersByFilm);
+        build(loadedFilms, filmsByUser);
+
+        long bytes = usersByFilm.values().stream().mapToLong(IdBitmap::sizeInBytes).sum() +
+                filmsByUser.values().stream().mapToLong(IdBitmap::sizeInBytes).sum();
+        log.info("Likes bitmaps built, films: " + usersByFilm.size() + ", users: " + filmsByUser.size() +
+                ", likes: " + loadedUsers.edges + ", approximate size: " + bytes + " bytes");
+    }
+
+    private static void build(AdjacencyBuilder builder, Map<Long, IdBitmap> bitmaps) {
+        Map<Long, long[]> ids = new HashMap<>();
+        builder.buildInto(ids);
+        ids.forEach((key, values) -> bitmaps.put(key, IdBitmap.of(values)));
+    }
+
+    // Returns false when the user already liked the film.
+    public synchronized boolean addLike(long userId, long filmId) {
+        if (hasLiked(userId, filmId)) {
+            return false;
+        }
+        usersByFilm.put(filmId, usersByFilm.getOrDefault(filmId, IdBitmap.EMPTY).with(userId));
+        filmsByUser.put(userId, filmsByUser.getOrDefault(userId, IdBitmap.EMPTY).with(filmId));
+        return true;
+    }
+
+    // Returns false when the user did not like the film.
+    public synchronized boolean removeLike(long userId, long filmId) {
+        if (!hasLiked(userId, filmId)) {
+            return false;
+        }
+        update(usersByFilm, filmId, usersByFilm.getOrDefault(filmId, IdBitmap.EMPTY).without(userId));
+        update(filmsByUser, userId, filmsByUser.getOrDefault(userId, IdBitmap.EMPTY).without(filmId));
+        return true;
+    }
+
+    private static void update(Map<Long, IdBitmap> bitmaps, long key, IdBitmap bitmap) {
+        if (bitmap.cardinality() == 0) {
+            bitmaps.remove(key);
+        } else {
+            bitmaps.put(key, bitmap);
+        }
+    }
+
+    public boolean hasLiked(long userId, long filmId) {
+        return filmsByUser.getOrDefault(userId, IdBitmap.EMPTY).contains(filmId);
+    }
+
+    // Users who liked the film, ascending.
+    public long[] findLikers(long filmId) {
+        return usersByFilm.getOrDefault(filmId, IdBitmap.EMPTY).toArray();
+    }
+
+    // Films the user liked, ascending.
+    public long[] findLikedFilms(long userId) {
+        return filmsByUser.getOrDefault(userId, IdBitmap.EMPTY).toArray();
+    }
+
+    // Users with at least one like.
+    public long[] findLikingUsers() {
+        return filmsByUser.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // Every film with at least one like, with its likers ascending.
+    public void forEachFilm(BiConsumer<Long, long[]> consumer) {
+        usersByFilm.forEach((filmId, users) -> consumer.accept(filmId, users.toArray()));
+    }
+
+    // Films liked by both users, ascending.
+    public long[] findCommonFilms(long userId, long otherUserId) {
+        return filmsByUser.getOrDefault(userId, IdBitmap.EMPTY)
+                .and(filmsByUser.getOrDefault(otherUserId, IdBitmap.EMPTY));
+    }
+
+    public Stats findFilmStats(long filmId) {
+        return new Stats(usersByFilm.getOrDefault(filmId, IdBitmap.EMPTY));
+    }
+
+    public Stats findUserStats(long userId) {
+        return new Stats(filmsByUser.getOrDefault(userId, IdBitmap.EMPTY));
+    }
+
+    public static final class Stats {
+        private final int count;
+        private final int containers;
+        private final long sizeInBytes;
+
+        private Stats(IdBitmap bitmap) {
+            this.count = bitmap.cardinality();
+            this.containers = bitmap.containerCount();
+            this.sizeInBytes = bitmap.sizeInBytes();
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getContainers() {
+            return containers;
+        }
+
+        // Estimated heap taken by the bitmap.
+        public long getSizeInBytes() {
+            return sizeInBytes;
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Film recommendations precomputed for every user from the like graph kept by LikesBitmapIndex.
+// A user's recommendations are the films liked by the users whose likes overlap most with theirs,
+// each film scored by the summed overlap of the neighbours that liked it.
+// The liking user's recommendations are recomputed on the next request after a like, everybody
+// else's on the next scheduled refresh. A refresh stores its results user by user and skips the users
+// whose likes changed while it ran, since their results may predate the change.
+@Component
+@Slf4j
+public class LikesMatrix {
+    private static final long[] NONE = SortedLongArrays.EMPTY;
+    private static final int USERS_PER_TASK = 256;
+
+    private final LikesBitmapIndex likes;
+    private final int maxNeighbours;
+    private final int maxFilms;
+    private final ForkJoinPool pool;
+
+    private final Map<Long, long[]> recommendations = new ConcurrentHashMap<>();
+    // user id -> refresh generation current when the user's likes last changed
+    private final Map<Long, Long> changedIn = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    public LikesMatrix(LikesBitmapIndex likes,
+                       @Value("${filmorate.recommendations.neighbours:50}") int maxNeighbours,
+                       @Value("${filmorate.recommendations.max-films:50}") int maxFilms,
+                       @Value("${filmorate.recommendations.parallelism:0}") int parallelism) {
+        this.likes = likes;
+        this.maxNeighbours = maxNeighbours;
+        this.maxFilms = maxFilms;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PostConstruct
+    @Scheduled(initialDelayString = "${filmorate.recommendations.refresh-ms:600000}",
+            fixedDelayString = "${filmorate.recommendations.refresh-ms:600000}")
+    public synchronized void refresh() {
+        long start = System.currentTimeMillis();
+        long current = generation.incrementAndGet();
+        long[] userIds = likes.findLikingUsers();
+        Map<Long, long[]> computed = new ConcurrentHashMap<>();
+        pool.invoke(new PrecomputeTask(userIds, 0, userIds.length, computed));
+        int[] skipped = {0};
+        // checked under the entry's lock, so a change either is seen here or removes the stored entry after
+        computed.forEach((userId, films) -> recommendations.compute(userId, (id, old) -> {
+            if (changedIn.getOrDefault(id, 0L) >= current) {
+                skipped[0]++;
+                return old;
+            }
+            return films;
+        }));
+        changedIn.values().removeIf(changed -> changed < current);
+        log.info("Recommendations precomputed for " + userIds.length + " users in " +
+                (System.currentTimeMillis() - start) + " ms, " + skipped[0] + " changed meanwhile.");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    // Call after LikesBitmapIndex has taken a like or an unlike of the user.
+    public void likesChanged(long userId) {
+        changedIn.put(userId, generation.get());
+        recommendations.remove(userId);
+    }
+
+    // Films the user has liked are filtered out here as well, in case a like lands between the
+    // computation and the read.
+    public long[] findRecommendations(long userId, int count) {
+        long[] films = recommendations.computeIfAbsent(userId, this::compute);
+        return Arrays.stream(films)
+                .filter(filmId -> !likes.hasLiked(userId, filmId))
+                .limit(count)
+                .toArray();
+    }
+
+    private long[] compute(long userId) {
+        long[] own = likes.findLikedFilms(userId);
+        if (own.length == 0) {
+            return NONE;
+        }
+
+        // users who liked the same films, counted by sort-and-count
+        int total = 0;
+        long[][] likers = new long[own.length][];
+        for (int i = 0; i < own.length; i++) {
+            likers[i] = likes.findLikers(own[i]);
+            total += likers[i].length;
+        }
+        long[] candidates = new long[total];
+        int size = 0;
+        for (long[] users : likers) {
+            System.arraycopy(users, 0, candidates, size, users.length);
+            size += users.length;
+        }
+        Arrays.sort(candidates);
+        long[] neighbours = new long[size];
+        int neighbourCount = 0;
+        for (int i = 0; i < size; ) {
+            int j = i;
+            while (j < size && candidates[j] == candidates[i]) {
+                j++;
+            }
+            if (candidates[i] != userId) {
+                neighbours[neighbourCount++] = SortedLongArrays.rankKey(j - i, candidates[i]);
+            }
+            i = j;
+        }
+        Arrays.sort(neighbours, 0, neighbourCount);
+
+        LongLongMap scores = new LongLongMap();
+        for (int k = neighbourCount - 1; k >= Math.max(0, neighbourCount - maxNeighbours); k--) {
+            long overlap = SortedLongArrays.rankedCount(neighbours[k]);
+            for (long filmId : likes.findLikedFilms(SortedLongArrays.rankedId(neighbours[k]))) {
+                if (Arrays.binarySearch(own, filmId) < 0) {
+                    scores.addTo(filmId, overlap);
+                }
+            }
+        }
+
+        long[] ranked = new long[scores.size()];
+        int[] rankedSize = {0};
+        scores.forEach((filmId, score) -> ranked[rankedSize[0]++] = SortedLongArrays.rankKey(score, filmId));
+        Arrays.sort(ranked);
+        long[] films = new long[Math.min(maxFilms, ranked.length)];
+        for (int i = 0; i < films.length; i++) {
+            films[i] = SortedLongArrays.rankedId(ranked[ranked.length - 1 - i]);
+        }
+        return films;
+    }
+
+    private final class PrecomputeTask extends RecursiveAction {
+        private final long[] userIds;
+        private final int from;
+        private final int to;
+        private final Map<Long, long[]> result;
+
+        private PrecomputeTask(long[] userIds, int from, int to, Map<Long, long[]> result) {
+            this.userIds = userIds;
+            this.from = from;
+            this.to = to;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= USERS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    result.put(userIds[i], LikesMatrix.this.compute(userIds[i]));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PrecomputeTask(userIds, from, middle, result),
+                    new PrecomputeTask(userIds, middle, to, result));
+        }
+    }
+
+}
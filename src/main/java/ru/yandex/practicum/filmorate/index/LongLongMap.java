@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.index;
+
+// Open addressing hash map from positive long keys to long values, without boxing.
+// Key 0 marks a free slot, so it can't be stored.
+class LongLongMap {
+    private static final long FREE = 0;
+    private static final long MISSING = -1;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private int mask;
+
+    LongLongMap() {
+        this(16);
+    }
+
+    LongLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    // Returns false if the key is already present.
+    boolean putIfAbsent(long key, long value) {
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    // Adds delta to the value of the key, a missing key counts as 0.
+    void addTo(long key, long delta) {
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        putIfAbsent(key, delta);
+    }
+
+    boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    // Returns -1 if the key is missing.
+    long get(long key) {
+        int slot = find(key);
+        return slot < 0 ? MISSING : values[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private int find(long key) {
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new long[oldValues.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                putIfAbsent(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+}
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+// Films ordered by like count (desc), then by id (asc) - same order the old full sort produced.
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PopularFilmsIndex {
+
+    private final FilmDao filmDao;
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final NavigableSet<Entry> ranking = new TreeSet<>();
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        entries.clear();
+        ranking.clear();
+        filmDao.findLikeCounts().forEach(this::put);
+        log.info("Popular films index built, films: " + entries.size());
+    }
+
+    public synchronized void update(Long filmId, int rate) {
+        put(filmId, rate);
+    }
+
+    public synchronized void remove(Long filmId) {
+        Entry entry = entries.remove(filmId);
+        if (entry != null) {
+            ranking.remove(entry);
+        }
+    }
+
+    public synchronized List<Long> findFilmIds() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    // Returns the indexed like count of the film, null when the film is not indexed.
+    public synchronized Integer findRate(Long filmId) {
+        Entry entry = entries.get(filmId);
+        return entry == null ? null : entry.rate;
+    }
+
+    public synchronized List<Long> findTop(int count) {
+        List<Long> filmIds = new ArrayList<>(Math.min(count, ranking.size()));
+        Iterator<Entry> iterator = ranking.iterator();
+        while (filmIds.size() < count && iterator.hasNext()) {
+            filmIds.add(iterator.next().filmId);
+        }
+        return filmIds;
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    private void put(Long filmId, int rate) {
+        Entry previous = entries.put(filmId, new Entry(filmId, rate));
+        if (previous != null) {
+            ranking.remove(previous);
+        }
+        ranking.add(entries.get(filmId));
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final long filmId;
+        private final int rate;
+
+        private Entry(long filmId, int rate) {
+            this.filmId = filmId;
+            this.rate = rate;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (rate != other.rate) {
+                return Integer.compare(other.rate, rate);
+            }
+            return Long.compare(filmId, other.filmId);
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+// MinHash signatures of the sets of users who liked each film, bucketed with LSH: the signature is cut
+// into bands of rows values and films sharing all values of any band land in the same bucket.
+// Similar films are looked up among the bucket mates only and ranked by the share of equal signature
+// values, which estimates the Jaccard similarity of the likers.
+// Signatures are built from the like graph kept by LikesBitmapIndex. A like only lowers signature
+// values, so it is applied in place; removing a like recomputes the signature from the film's likers.
+@Component
+@Slf4j
+public class SimilarFilmsIndex {
+    private static final long SEED = 20_190_101L;
+
+    private final LikesBitmapIndex likes;
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+
+    private final Map<Long, int[]> signatures = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> bandKeys = new ConcurrentHashMap<>();
+    private final List<Map<Long, long[]>> buckets = new ArrayList<>();
+
+    public SimilarFilmsIndex(LikesBitmapIndex likes,
+                             @Value("${filmorate.similar.bands:32}") int bands,
+                             @Value("${filmorate.similar.rows:3}") int rows) {
+        this.likes = likes;
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new Random(SEED).longs(bands * rows).toArray();
+        for (int band = 0; band < bands; band++) {
+            buckets.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    @PostConstruct
+    public synchronized void rebuild() {
+        Map<Long, int[]> loaded = new HashMap<>();
+        likes.forEachFilm((filmId, likers) -> loaded.put(filmId, signatureOf(likers)));
+        signatures.clear();
+        bandKeys.clear();
+        buckets.forEach(Map::clear);
+        loaded.forEach(this::put);
+        log.info("Similar films index built, films: " + loaded.size() + ", signature size: " + bands * rows);
+    }
+
+    public synchronized void addLike(long filmId, long userId) {
+        int[] signature = signatures.get(filmId);
+        int[] updated = signature == null ? emptySignature() : signature.clone();
+        if (addToSignature(updated, userId) || signature == null) {
+            put(filmId, updated);
+        }
+    }
+
+    // Call after LikesBitmapIndex has removed the like.
+    public synchronized void removeLike(long filmId) {
+        long[] likers = likes.findLikers(filmId);
+        if (likers.length == 0) {
+            remove(filmId);
+            return;
+        }
+        put(filmId, signatureOf(likers));
+    }
+
+    // Returns film id -> estimated Jaccard similarity, most similar first.
+    public Map<Long, Double> findSimilar(long filmId, int count) {
+        int[] signature = signatures.get(filmId);
+        long[] keys = bandKeys.get(filmId);
+        Map<Long, Double> similar = new LinkedHashMap<>();
+        if (signature == null || keys == null) {
+            return similar;
+        }
+
+        int total = 0;
+        long[][] bucketMates = new long[bands][];
+        for (int band = 0; band < bands; band++) {
+            bucketMates[band] = buckets.get(band).getOrDefault(keys[band], SortedLongArrays.EMPTY);
+            total += bucketMates[band].length;
+        }
+        long[] candidates = new long[total];
+        int size = 0;
+        for (long[] films : bucketMates) {
+            System.arraycopy(films, 0, candidates, size, films.length);
+            size += films.length;
+        }
+        Arrays.sort(candidates);
+
+        long[] ranked = new long[size];
+        int rankedSize = 0;
+        for (int i = 0; i < size; i++) {
+            long candidate = candidates[i];
+            if (candidate == filmId || (i > 0 && candidates[i - 1] == candidate)) {
+                continue;
+            }
+            int[] other = signatures.get(candidate);
+            int matches = other == null ? 0 : matches(signature, other);
+            if (matches > 0) {
+                ranked[rankedSize++] = SortedLongArrays.rankKey(matches, candidate);
+            }
+        }
+        Arrays.sort(ranked, 0, rankedSize);
+        for (int k = rankedSize - 1; k >= 0 && similar.size() < count; k--) {
+            similar.put(SortedLongArrays.rankedId(ranked[k]),
+                    (double) SortedLongArrays.rankedCount(ranked[k]) / signature.length);
+        }
+        return similar;
+    }
+
+    private void put(long filmId, int[] signature) {
+        long[] keys = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            long key = band;
+            for (int row = band * rows; row < (band + 1) * rows; row++) {
+                key = key * 0x9E3779B97F4A7C15L + signature[row];
+            }
+            keys[band] = key;
+        }
+        long[] previous = bandKeys.put(filmId, keys);
+        signatures.put(filmId, signature);
+        for (int band = 0; band < bands; band++) {
+            if (previous != null && previous[band] != keys[band]) {
+                SortedLongArrays.delete(buckets.get(band), previous[band], filmId);
+            }
+            SortedLongArrays.insert(buckets.get(band), keys[band], filmId);
+        }
+    }
+
+    private void remove(long filmId) {
+        long[] previous = bandKeys.remove(filmId);
+        signatures.remove(filmId);
+        if (previous != null) {
+            for (int band = 0; band < bands; band++) {
+                SortedLongArrays.delete(buckets.get(band), previous[band], filmId);
+            }
+        }
+    }
+
+    private int[] emptySignature() {
+        int[] signature = new int[bands * rows];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        return signature;
+    }
+
+    private int[] signatureOf(long[] likers) {
+        int[] signature = emptySignature();
+        for (long userId : likers) {
+            addToSignature(signature, userId);
+        }
+        return signature;
+    }
+
+    private boolean addToSignature(int[] signature, long userId) {
+        boolean changed = false;
+        for (int i = 0; i < signature.length; i++) {
+            int hash = hash(seeds[i], userId);
+            if (hash < signature[i]) {
+                signature[i] = hash;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static int matches(int[] signature, int[] other) {
+        int matches = 0;
+        for (int i = 0; i < signature.length; i++) {
+            if (signature[i] == other[i]) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    // SplitMix64 finalizer, one seed per hash function; non-negative result.
+    private static int hash(long seed, long value) {
+        long z = value + seed;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (int) ((z ^ (z >>> 31)) >>> 33);
+    }
+
+}
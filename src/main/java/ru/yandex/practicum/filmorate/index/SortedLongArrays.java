@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.index;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// Copy-on-write updates of adjacency maps holding sorted long arrays.
+final class SortedLongArrays {
+    static final long[] EMPTY = new long[0];
+
+    private SortedLongArrays() {
+    }
+
+    static void insert(Map<Long, long[]> adjacency, long key, long id) {
+        long[] ids = adjacency.getOrDefault(key, EMPTY);
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return;
+        }
+        int insertAt = -position - 1;
+        long[] updated = new long[ids.length + 1];
+        System.arraycopy(ids, 0, updated, 0, insertAt);
+        updated[insertAt] = id;
+        System.arraycopy(ids, insertAt, updated, insertAt + 1, ids.length - insertAt);
+        adjacency.put(key, updated);
+    }
+
+    static void delete(Map<Long, long[]> adjacency, long key, long id) {
+        long[] ids = adjacency.getOrDefault(key, EMPTY);
+        int position = Arrays.binarySearch(ids, id);
+        if (position < 0) {
+            return;
+        }
+        if (ids.length == 1) {
+            adjacency.remove(key);
+            return;
+        }
+        long[] updated = new long[ids.length - 1];
+        System.arraycopy(ids, 0, updated, 0, position);
+        System.arraycopy(ids, position + 1, updated, position, ids.length - position - 1);
+        adjacency.put(key, updated);
+    }
+
+    // Ranking key: count in the high half, inverted id in the low half, so that an ascending sort puts
+    // the highest count (and the lowest id among equal counts) last. Ids must fit into 32 bits.
+    static long rankKey(long count, long id) {
+        return (count << 32) | (0xFFFFFFFFL - id);
+    }
+
+    static long rankedId(long key) {
+        return 0xFFFFFFFFL - (key & 0xFFFFFFFFL);
+    }
+
+    static int rankedCount(long key) {
+        return (int) (key >>> 32);
+    }
+
+}
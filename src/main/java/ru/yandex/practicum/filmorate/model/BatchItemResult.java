@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@Getter
+@RequiredArgsConstructor
+public class BatchItemResult {
+
+    private final int index;
+    private final Long id;
+    private final List<Violation> violations;
+
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final int maxSize;
+    private final long ttlMillis;
+
+}
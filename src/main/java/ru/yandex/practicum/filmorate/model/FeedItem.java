@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Getter
+@RequiredArgsConstructor
+public class FeedItem {
+
+    private final Film film;
+    private final List<Long> friendIds;
+    private final LocalDateTime lastLikedAt;
+
+}
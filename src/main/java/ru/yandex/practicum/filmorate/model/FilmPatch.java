@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import ru.yandex.practicum.filmorate.validator.IsAfterCinemaBirthday;
+
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.Size;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+
+// Fields left null are not changed; an empty genres set removes all genres.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class FilmPatch {
+
+    @Pattern(regexp = ".*\\S.*", message = "Field \"name\" can't consist of space symbols.")
+    String name;
+
+    @Size(max = 200, message = "Field \"description\" length can't be more then 200 symbols.")
+    String description;
+
+    @IsAfterCinemaBirthday(message = "Field \"releaseDate\" can't contain date before 28th, December, 1895.")
+    LocalDate releaseDate;
+
+    @Positive(message = "Value of field \"duration\" can't be negative.")
+    Integer duration;
+
+    Mpa mpa;
+
+    LinkedHashSet<Genre> genres;
+
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+// Users from the first to the last one; empty when no chain was found.
+@Getter
+@RequiredArgsConstructor
+public class FriendPath {
+
+    private final List<User> users;
+    private final boolean budgetExceeded;
+
+}
@@ -1,21 +1,19 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.AccessLevel;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Builder;
-import lombok.Data;
-import lombok.experimental.FieldDefaults;
+import lombok.Value;
 
-@Data
-@Builder
-@FieldDefaults(level = AccessLevel.PRIVATE)
+@Value
 public class Genre {
+
     Long id;
     String name;
 
-    public Genre() {
-    }
-
-    public Genre(Long id, String name) {
+    @Builder
+    @JsonCreator
+    public Genre(@JsonProperty("id") Long id, @JsonProperty("name") String name) {
         this.id = id;
         this.name = name;
     }
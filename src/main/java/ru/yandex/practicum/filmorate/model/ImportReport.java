@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@Getter
+@RequiredArgsConstructor
+public class ImportReport {
+
+    private final long read;
+    private final long imported;
+    private final long skipped;
+    private final long durationMillis;
+    private final long rowsPerSecond;
+    private final List<String> errors;
+
+}
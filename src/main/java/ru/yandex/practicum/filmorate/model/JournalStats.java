@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class JournalStats {
+
+    private final boolean enabled;
+    private final long recoveryMillis;
+    private final long recoveredMutations;
+    private final long commits;
+    private final long records;
+
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Getter
+@RequiredArgsConstructor
+public class Like {
+
+    private final Long filmId;
+    private final Long userId;
+    private final LocalDateTime likedAt;
+
+}
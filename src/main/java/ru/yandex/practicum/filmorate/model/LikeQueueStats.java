@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Backpressure of the like write-behind queue: how full it is, how many likes were coalesced,
+// written or lost, and how long requests waited for room.
+@Getter
+@RequiredArgsConstructor
+public class LikeQueueStats {
+
+    private final int capacity;
+    private final int queued;
+    private final int pending;
+    private final int maxQueued;
+    private final long submitted;
+    private final long coalesced;
+    private final long flushes;
+    private final long flushedLikes;
+    private final long failedLikes;
+    private final long blockedSubmits;
+    private final long blockedMillis;
+    private final long rejectedSubmits;
+    private final long lastFlushMillis;
+
+}
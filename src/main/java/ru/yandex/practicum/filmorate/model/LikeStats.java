@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class LikeStats {
+
+    private final Long id;
+    private final int count;
+    private final int containers;
+    private final long sizeInBytes;
+
+}
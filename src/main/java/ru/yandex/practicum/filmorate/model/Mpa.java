@@ -1,22 +1,19 @@
 package ru.yandex.practicum.filmorate.model;
 
-import lombok.AccessLevel;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Builder;
-import lombok.Data;
-import lombok.experimental.FieldDefaults;
+import lombok.Value;
 
-@Data
-@Builder
-@FieldDefaults(level = AccessLevel.PRIVATE)
+@Value
 public class Mpa {
 
     Long id;
     String name;
 
-    public Mpa() {
-    }
-
-    public Mpa(Long id, String name) {
+    @Builder
+    @JsonCreator
+    public Mpa(@JsonProperty("id") Long id, @JsonProperty("name") String name) {
         this.id = id;
         this.name = name;
     }
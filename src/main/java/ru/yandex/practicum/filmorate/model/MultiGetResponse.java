@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@Getter
+@RequiredArgsConstructor
+public class MultiGetResponse<T> {
+
+    private final List<T> found;
+    private final List<Long> missingIds;
+
+}
@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.Past;
+import javax.validation.constraints.Pattern;
+import java.time.LocalDate;
+
+// Fields left null are not changed.
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class UserPatch {
+
+    @Email(message = "Invalid email.")
+    @Pattern(regexp = ".*\\S.*", message = "Field \"email\" can't be empty.")
+    String email;
+
+    @Pattern(regexp = "[^ ]+", message = "Field \"login\" can't be empty or contain space symbols.")
+    String login;
+
+    String name;
+
+    @Past(message = "Field \"birthday\" can't contain future date.")
+    LocalDate birthday;
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return email == null && login == null && name == null && birthday == null;
+    }
+
+}
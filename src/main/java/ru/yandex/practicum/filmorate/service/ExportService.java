@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+import ru.yandex.practicum.filmorate.dao.UserDao;
+import ru.yandex.practicum.filmorate.exceptions.CustomValidationException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+// Writes tables as NDJSON (one JSON document per line) while the rows are being read,
+// so memory use does not depend on the table size.
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ExportService {
+
+    public static final String NDJSON = "ndjson";
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson;charset=UTF-8";
+
+    FilmDao filmDao;
+    UserDao userDao;
+    ObjectMapper objectMapper;
+
+    public void checkFormat(String format) {
+        if (!NDJSON.equalsIgnoreCase(format)) {
+            throw new CustomValidationException("Export format \"" + format + "\" is not supported, use \"" +
+                    NDJSON + "\".");
+        }
+    }
+
+    public void exportFilms(OutputStream out) throws IOException {
+        export("films", out, filmDao::forEachFilm);
+    }
+
+    public void exportLikes(OutputStream out) throws IOException {
+        export("likes", out, filmDao::forEachLike);
+    }
+
+    public void exportUsers(OutputStream out) throws IOException {
+        export("users", out, userDao::forEachUser);
+    }
+
+    public void exportFriendships(OutputStream out) throws IOException {
+        export("friendships", out, userDao::forEachFriendship);
+    }
+
+    private <T> void export(String name, OutputStream out, Consumer<Consumer<T>> source) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long[] rows = new long[1];
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            try {
+                source.accept(value -> {
+                    try {
+                        writer.writeValue(generator, value);
+                        generator.writeRaw('\n');
+                        rows[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        log.info("Exported " + rows[0] + " " + name + ".");
+    }
+
+}
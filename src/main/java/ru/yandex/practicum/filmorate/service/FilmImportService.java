@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+import ru.yandex.practicum.filmorate.dao.impl.DictionaryCache;
+import ru.yandex.practicum.filmorate.exceptions.GenreNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.MpaRatingNotFoundException;
+import ru.yandex.practicum.filmorate.index.PopularFilmsIndex;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Violation;
+
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class FilmImportService {
+
+    FilmDao filmDao;
+    DictionaryCache dictionaryCache;
+    PopularFilmsIndex popularFilmsIndex;
+    Validator validator;
+
+    @NonFinal
+    @Value("${filmorate.import.batch-size:500}")
+    int batchSize;
+
+    public List<BatchItemResult> createAll(List<Film> films) {
+        long start = System.currentTimeMillis();
+        List<List<Violation>> violations = IntStream.range(0, films.size())
+                .parallel()
+                .mapToObj(i -> validate(films.get(i)))
+                .collect(Collectors.toList());
+
+        BatchItemResult[] results = new BatchItemResult[films.size()];
+        List<Integer> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < films.size(); i++) {
+            if (violations.get(i).isEmpty()) {
+                batch.add(i);
+                if (batch.size() == batchSize) {
+                    insert(films, batch, results);
+                    batch.clear();
+                }
+            } else {
+                results[i] = new BatchItemResult(i, null, violations.get(i));
+            }
+        }
+        if (!batch.isEmpty()) {
+            insert(films, batch, results);
+        }
+
+        long created = IntStream.range(0, results.length).filter(i -> results[i].getId() != null).count();
+        log.info("Batch import: " + created + " of " + films.size() + " films created in " +
+                (System.currentTimeMillis() - start) + " ms.");
+        return List.of(results);
+    }
+
+    private void insert(List<Film> films, List<Integer> batch, BatchItemResult[] results) {
+        List<Film> batchFilms = batch.stream()
+                .map(films::get)
+                .collect(Collectors.toList());
+        try {
+            List<Long> ids = filmDao.createAll(batchFilms);
+            for (int i = 0; i < batch.size(); i++) {
+                results[batch.get(i)] = new BatchItemResult(batch.get(i), ids.get(i), List.of());
+                // new films have no likes, whatever rate the request carried
+                popularFilmsIndex.update(ids.get(i), 0);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Batch of " + batch.size() + " films was not saved: " + e.getMessage());
+            for (Integer index : batch) {
+                results[index] = new BatchItemResult(index, null,
+                        List.of(new Violation("batch", "Batch was not saved: " + e.getMostSpecificCause().getMessage())));
+            }
+        }
+    }
+
+    private List<Violation> validate(Film film) {
+        if (film == null) {
+            return List.of(new Violation("film", "Film can't be null."));
+        }
+        List<Violation> violations = validator.validate(film).stream()
+                .map(violation -> new Violation(violation.getPropertyPath().toString(), violation.getMessage()))
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (film.getId() != null) {
+            violations.add(new Violation("id", "New film can't have an id."));
+        }
+        if (film.getReleaseDate() == null) {
+            violations.add(new Violation("releaseDate", "Field \"releaseDate\" can't be null."));
+        }
+        if (film.getMpa() == null) {
+            violations.add(new Violation("mpa", "Field \"mpa\" can't be null."));
+        } else {
+            try {
+                dictionaryCache.findMpaById(film.getMpa().getId());
+            } catch (MpaRatingNotFoundException e) {
+                violations.add(new Violation("mpa", e.getMessage()));
+            }
+        }
+        for (Genre genre : film.getGenres()) {
+            if (genre == null) {
+                violations.add(new Violation("genres", "Genre can't be null."));
+                continue;
+            }
+            try {
+                dictionaryCache.findGenreById(genre.getId());
+            } catch (GenreNotFoundException e) {
+                violations.add(new Violation("genres", e.getMessage()));
+            }
+        }
+        return violations;
+    }
+
+}
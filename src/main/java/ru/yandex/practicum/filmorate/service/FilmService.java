@@ -3,14 +3,40 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dao.FilmDao;
 import ru.yandex.practicum.filmorate.dao.UserDao;
+import ru.yandex.practicum.filmorate.dao.impl.CachingFilmDao;
+import ru.yandex.practicum.filmorate.dao.impl.DictionaryCache;
+import ru.yandex.practicum.filmorate.exceptions.CustomValidationException;
 import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.index.FriendFeed;
+import ru.yandex.practicum.filmorate.index.LikesBitmapIndex;
+import ru.yandex.practicum.filmorate.index.LikesMatrix;
+import ru.yandex.practicum.filmorate.index.PopularFilmsIndex;
+import ru.yandex.practicum.filmorate.index.SimilarFilmsIndex;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.FeedItem;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPatch;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.LikeQueueStats;
+import ru.yandex.practicum.filmorate.model.LikeStats;
+import ru.yandex.practicum.filmorate.model.MultiGetResponse;
+import ru.yandex.practicum.filmorate.model.SimilarFilm;
 
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,55 +47,331 @@ public class FilmService {
 
     FilmDao filmDao;
     UserDao userDao;
+    PopularFilmsIndex popularFilmsIndex;
+    LikesMatrix likesMatrix;
+    LikesBitmapIndex likesBitmapIndex;
+    SimilarFilmsIndex similarFilmsIndex;
+    FriendFeed friendFeed;
+    // absent under the "memory" profile
+    ObjectProvider<CachingFilmDao> filmCache;
+    // present when filmorate.likes.write-behind.enabled is set
+    ObjectProvider<LikeWriteBehind> likeWriteBehind;
+    DictionaryCache dictionaryCache;
+    // A like is written and applied to the indexes under the film's lock, so the indexes get the likes
+    // of a film in the order they were written.
+    Object[] likeLocks = newLocks(64);
 
-    public Film addLike(Long filmId, Long userId) {
-        userDao.checkUserExistence(userId);
-        filmDao.checkFilmExistence(filmId);
+    @NonFinal
+    @Value("${filmorate.pagination.max-page-size:1000}")
+    int maxPageSize;
+
+    @NonFinal
+    @Value("${filmorate.pagination.max-unpaged:10000}")
+    int maxUnpaged;
+
+    @NonFinal
+    @Value("${filmorate.multiget.max-ids:100}")
+    int maxMultiGetIds;
 
-        filmDao.addLike(filmId, userId);
+    @PostConstruct
+    public void init() {
+        likeWriteBehind.ifAvailable(writeBehind -> writeBehind.setLostLikeHandler(this::likeLost));
+    }
+
+    public Film addLike(Long filmId, Long userId) {
+        Film film;
+        LikeWriteBehind writeBehind = likeWriteBehind.getIfAvailable();
+        if (writeBehind == null) {
+            userDao.checkUserExistence(userId);
+            filmDao.checkFilmExistence(filmId);
+        }
+        synchronized (likeLock(filmId)) {
+            boolean changed;
+            if (writeBehind == null) {
+                film = filmDao.addLike(filmId, userId);
+                changed = likesBitmapIndex.addLike(userId, filmId);
+            } else {
+                // the queue updates the like graph itself
+                changed = writeBehind.submit(filmId, userId, true) != 0;
+                film = findFilmById(filmId);
+            }
+            popularFilmsIndex.update(filmId, film.getRate());
+            if (changed) {
+                likesMatrix.likesChanged(userId);
+                similarFilmsIndex.addLike(filmId, userId);
+                friendFeed.addLike(userId, filmId, System.currentTimeMillis());
+            }
+        }
         log.info("Like was added to film");
-        return filmDao.findFilmById(filmId);
+        return film;
     }
 
     public Film removeLike(Long filmId, Long userId) {
-        userDao.checkUserExistence(userId);
-        filmDao.checkFilmExistence(filmId);
-        filmDao.removeLike(filmId, userId);
+        Film film;
+        LikeWriteBehind writeBehind = likeWriteBehind.getIfAvailable();
+        if (writeBehind == null) {
+            userDao.checkUserExistence(userId);
+            filmDao.checkFilmExistence(filmId);
+        }
+        synchronized (likeLock(filmId)) {
+            boolean changed;
+            if (writeBehind == null) {
+                film = filmDao.removeLike(filmId, userId);
+                changed = likesBitmapIndex.removeLike(userId, filmId);
+            } else {
+                changed = writeBehind.submit(filmId, userId, false) != 0;
+                film = findFilmById(filmId);
+            }
+            popularFilmsIndex.update(filmId, film.getRate());
+            if (changed) {
+                likesMatrix.likesChanged(userId);
+                similarFilmsIndex.removeLike(filmId);
+                friendFeed.removeLike(userId, filmId);
+            }
+        }
         log.info("Like was removed from film");
-        return filmDao.findFilmById(filmId);
+        return film;
+    }
+
+    // A queued like or unlike that could not be written has been taken back from the like graph; the
+    // indexes that took it in are brought back to the graph. When the pair was changed again since,
+    // they already follow the graph and only the film's rate is refreshed.
+    // A restored like enters the friend feed at the current time, its stored time is not at hand here.
+    private void likeLost(Like like, boolean liked) {
+        long filmId = like.getFilmId();
+        long userId = like.getUserId();
+        synchronized (likeLock(filmId)) {
+            popularFilmsIndex.update(filmId, findFilmById(filmId).getRate());
+            if (likesBitmapIndex.hasLiked(userId, filmId) == liked) {
+                return;
+            }
+            likesMatrix.likesChanged(userId);
+            if (liked) {
+                similarFilmsIndex.removeLike(filmId);
+                friendFeed.removeLike(userId, filmId);
+            } else {
+                similarFilmsIndex.addLike(filmId, userId);
+                friendFeed.addLike(userId, filmId, System.currentTimeMillis());
+            }
+        }
     }
 
     public List<Film> findPopularFilms(Integer count) {
-        List<Film> films = filmDao.findAll();
-        if (films.isEmpty()) {
+        if (popularFilmsIndex.isEmpty()) {
             String message = "Film collection is empty.";
             log.debug(message);
             throw new FilmNotFoundException(message);
         }
-        return films.stream()
-                .sorted((film1, film2) -> film2.getRate() - film1.getRate())
-                .limit(count)
-                .collect(Collectors.toList());
+        return load(() -> filmDao.findFilmsByIds(popularFilmsIndex.findTop(count)));
     }
 
     public Film create(Film film) {
+        Film created = filmDao.create(film);
+        popularFilmsIndex.update(created.getId(), created.getRate());
         log.info("Film " + film.getName() + " was successfully saved!");
-        return filmDao.create(film);
+        return created;
     }
 
     public Film update(Film film) {
         filmDao.checkFilmExistence(film.getId());
+        filmDao.update(film);
         log.info("Film " + film.getName() + " was successfully updated!");
-        return filmDao.update(film);
+        return findFilmById(film.getId());
     }
 
+    public Film patch(Long id, FilmPatch patch) {
+        filmDao.checkFilmExistence(id);
+        if (patch.getMpa() != null) {
+            dictionaryCache.findMpaById(patch.getMpa().getId());
+        }
+        if (patch.getGenres() != null) {
+            for (Genre genre : patch.getGenres()) {
+                dictionaryCache.findGenreById(genre == null ? null : genre.getId());
+            }
+        }
+        filmDao.patch(id, patch);
+        log.info("Film with id \"" + id + "\" was successfully patched!");
+        return findFilmById(id);
+    }
+
+    // Refuses rather than cuts a list longer than max-unpaged, so a client never takes a part for the whole.
     public List<Film> findAll() {
-        return filmDao.findAll();
+        List<Film> films = load(() -> filmDao.findPage(0, maxUnpaged + 1));
+        if (films.size() > maxUnpaged) {
+            throw new CustomValidationException("More than " + maxUnpaged + " films, " +
+                    "load them by pages with after and limit.");
+        }
+        return films;
+    }
+
+    public List<Film> findPage(Long afterId, Integer limit) {
+        return load(() -> filmDao.findPage(afterId == null ? 0 : afterId,
+                limit == null ? maxPageSize : Math.min(limit, maxPageSize)));
     }
 
     public Film findFilmById(Long id) {
-        filmDao.checkFilmExistence(id);
-        return filmDao.findFilmById(id);
+        return load(() -> List.of(filmDao.findFilmById(id))).get(0);
+    }
+
+    // Every film read of the service goes through here: with write-behind likes, rate also counts
+    // the likes that are queued but not written yet. The NDJSON export streams the stored rows as they are.
+    private List<Film> load(Supplier<List<Film>> loader) {
+        LikeWriteBehind writeBehind = likeWriteBehind.getIfAvailable();
+        return writeBehind == null ? loader.get() : writeBehind.withQueuedLikes(loader);
+    }
+
+    public MultiGetResponse<Film> findFilmsByIds(List<Long> ids) {
+        Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+        if (uniqueIds.size() > maxMultiGetIds) {
+            throw new CustomValidationException("Can't load more than " + maxMultiGetIds + " films at once.");
+        }
+        List<Film> films = load(() -> filmDao.findFilmsByIds(uniqueIds));
+        Set<Long> foundIds = films.stream()
+                .map(Film::getId)
+                .collect(Collectors.toSet());
+        List<Long> missingIds = uniqueIds.stream()
+                .filter(id -> !foundIds.contains(id))
+                .collect(Collectors.toList());
+        return new MultiGetResponse<>(films, missingIds);
+    }
+
+    public List<Film> findRecommendations(Long userId, int count) {
+        userDao.checkUserExistence(userId);
+        long[] filmIds = likesMatrix.findRecommendations(userId, Math.min(count, maxPageSize));
+        return load(() -> filmDao.findFilmsByIds(Arrays.stream(filmIds)
+                .boxed()
+                .collect(Collectors.toList())));
+    }
+
+    public List<SimilarFilm> findSimilarFilms(Long filmId, int count) {
+        filmDao.checkFilmExistence(filmId);
+        Map<Long, Double> similar = similarFilmsIndex.findSimilar(filmId, Math.min(count, maxPageSize));
+        List<SimilarFilm> result = new ArrayList<>(similar.size());
+        for (Film film : load(() -> filmDao.findFilmsByIds(similar.keySet()))) {
+            result.add(new SimilarFilm(film, similar.get(film.getId())));
+        }
+        return result;
+    }
+
+    public boolean hasLiked(Long filmId, Long userId) {
+        filmDao.checkFilmExistence(filmId);
+        userDao.checkUserExistence(userId);
+        return likesBitmapIndex.hasLiked(userId, filmId);
+    }
+
+    public List<Film> findCommonLikedFilms(Long userId, Long otherUserId) {
+        userDao.checkUserExistence(userId);
+        userDao.checkUserExistence(otherUserId);
+        long[] filmIds = likesBitmapIndex.findCommonFilms(userId, otherUserId);
+        return load(() -> filmDao.findFilmsByIds(Arrays.stream(filmIds)
+                .boxed()
+                .collect(Collectors.toList())));
+    }
+
+    public LikeStats findFilmLikeStats(Long filmId) {
+        filmDao.checkFilmExistence(filmId);
+        LikesBitmapIndex.Stats stats = likesBitmapIndex.findFilmStats(filmId);
+        return new LikeStats(filmId, stats.getCount(), stats.getContainers(), stats.getSizeInBytes());
+    }
+
+    public LikeStats findUserLikeStats(Long userId) {
+        userDao.checkUserExistence(userId);
+        LikesBitmapIndex.Stats stats = likesBitmapIndex.findUserStats(userId);
+        return new LikeStats(userId, stats.getCount(), stats.getContainers(), stats.getSizeInBytes());
+    }
+
+    public List<FeedItem> findFeed(Long userId, int count) {
+        userDao.checkUserExistence(userId);
+        List<FriendFeed.Item> items = friendFeed.findFeed(userId, Math.min(count, maxPageSize),
+                System.currentTimeMillis());
+        Map<Long, Film> films = new HashMap<>();
+        for (Film film : load(() -> filmDao.findFilmsByIds(items.stream()
+                .map(FriendFeed.Item::getFilmId)
+                .collect(Collectors.toList())))) {
+            films.put(film.getId(), film);
+        }
+        List<FeedItem> feed = new ArrayList<>(items.size());
+        for (FriendFeed.Item item : items) {
+            Film film = films.get(item.getFilmId());
+            if (film != null) {
+                feed.add(new FeedItem(film,
+                        Arrays.stream(item.getUserIds()).boxed().collect(Collectors.toList()),
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(item.getLastLikedAt()), ZoneId.systemDefault())));
+            }
+        }
+        return feed;
+    }
+
+    // films.rate is kept by likes and unlikes; this recounts it in case a write path ever misses it,
+    // then brings every popularity index entry that differs from the film's rate back in line and drops
+    // the entries of films the DAO does not have.
+    // Returns the number of films whose stored rate was recounted.
+    @Scheduled(initialDelayString = "${filmorate.likes.repair-ms:3600000}",
+            fixedDelayString = "${filmorate.likes.repair-ms:3600000}")
+    public int repairLikeCounts() {
+        List<Long> repaired = filmDao.repairLikeCounts();
+        if (!repaired.isEmpty()) {
+            log.warn("Like counts of " + repaired.size() + " films drifted and were recounted: " + repaired);
+        }
+        List<Long> reindexed = new ArrayList<>();
+        LikeWriteBehind writeBehind = likeWriteBehind.getIfAvailable();
+        Map<Long, Integer> counts = filmDao.findLikeCounts();
+        for (Map.Entry<Long, Integer> count : counts.entrySet()) {
+            Long filmId = count.getKey();
+            int queued = writeBehind == null ? 0 : writeBehind.findRateDelta(filmId);
+            if (Objects.equals(popularFilmsIndex.findRate(filmId), count.getValue() + queued)) {
+                continue;
+            }
+            // the counts may predate a like in flight, so the entry is checked again under the film's lock
+            synchronized (likeLock(filmId)) {
+                int rate = findFilmById(filmId).getRate();
+                if (!Objects.equals(popularFilmsIndex.findRate(filmId), rate)) {
+                    popularFilmsIndex.update(filmId, rate);
+                    reindexed.add(filmId);
+                }
+            }
+        }
+        for (Long filmId : popularFilmsIndex.findFilmIds()) {
+            if (counts.containsKey(filmId)) {
+                continue;
+            }
+            // the film may have been created after the counts were read
+            synchronized (likeLock(filmId)) {
+                if (filmDao.findFilmsByIds(List.of(filmId)).isEmpty()) {
+                    popularFilmsIndex.remove(filmId);
+                    reindexed.add(filmId);
+                }
+            }
+        }
+        if (!reindexed.isEmpty()) {
+            log.warn("Popular films index entries of " + reindexed.size() + " films drifted and were fixed: " +
+                    reindexed);
+        }
+        return repaired.size();
+    }
+
+    private Object likeLock(Long filmId) {
+        return likeLocks[(int) (filmId & (likeLocks.length - 1))];
+    }
+
+    private static Object[] newLocks(int count) {
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    public CacheStats findCacheStats() {
+        CachingFilmDao cache = filmCache.getIfAvailable();
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.getStats();
+    }
+
+    public LikeQueueStats findLikeQueueStats() {
+        LikeWriteBehind writeBehind = likeWriteBehind.getIfAvailable();
+        return writeBehind == null
+                ? new LikeQueueStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0)
+                : writeBehind.getStats();
     }
 
 }
\ No newline at end of file
@@ -2,7 +2,7 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import ru.yandex.practicum.filmorate.dao.GenreDao;
+import ru.yandex.practicum.filmorate.dao.impl.DictionaryCache;
 import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.util.List;
@@ -11,15 +11,14 @@ import java.util.List;
 @RequiredArgsConstructor
 public class GenreService {
 
-    private final GenreDao genreDao;
+    private final DictionaryCache dictionaryCache;
 
     public List<Genre> findAll() {
-        return genreDao.findAll();
+        return dictionaryCache.findAllGenres();
     }
 
     public Genre findGenreById(Long id) {
-        genreDao.checkGenreExistence(id);
-        return genreDao.findGenreById(id);
+        return dictionaryCache.findGenreById(id);
     }
 
 }
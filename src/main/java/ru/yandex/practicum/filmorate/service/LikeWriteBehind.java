@@ -0,0 +1,434 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+import ru.yandex.practicum.filmorate.dao.UserDao;
+import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.LikeQueueFullException;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
+import ru.yandex.practicum.filmorate.index.IdSet;
+import ru.yandex.practicum.filmorate.index.LikesBitmapIndex;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.LikeQueueStats;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+// Asynchronous like ingest, used when filmorate.likes.write-behind.enabled is set. Film and user ids
+// are checked against in-memory id sets, the like or unlike is applied to LikesBitmapIndex and queued,
+// and the request returns without touching the database.
+// Queued changes are keyed by film and user in a bounded ring buffer, so a like and an unlike of the
+// same pair cancel out before they reach the database. A flusher thread writes up to batch-size
+// changes with FilmDao.saveLikes once batch-size changes are queued or the oldest one has waited
+// flush-ms. When the ring is full, requests wait for the flusher up to offer-timeout-ms and then fail.
+// Until a change is written, its like count delta is added to the film's rate, so the liking user sees
+// the like at once. A read that overlaps the flush of one of its films is repeated, so a like is never
+// counted both in films.rate and in the delta, or in neither. A change that can not be written is
+// taken back from LikesBitmapIndex and then handed to the lost like handler, which reverts the indexes
+// built on it. Shutdown writes everything queued.
+@Component
+@Profile("!memory")
+@ConditionalOnProperty(name = "filmorate.likes.write-behind.enabled", havingValue = "true")
+@Slf4j
+public class LikeWriteBehind {
+
+    private final FilmDao filmDao;
+    private final UserDao userDao;
+    private final LikesBitmapIndex likesBitmapIndex;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushMillis;
+    private final long offerTimeoutMillis;
+
+    private IdSet filmIds;
+    private IdSet userIds;
+
+    private final Object lock = new Object();
+    // guarded by lock: ring of queued film/user keys with the time each was queued
+    private final long[] ring;
+    private final long[] queuedAt;
+    private int head;
+    private int size;
+    // queued changes not written yet; a key is missing when its like and unlike cancelled out
+    private final Map<Long, Boolean> pending = new HashMap<>();
+    private final Map<Long, LocalDateTime> likedAt = new HashMap<>();
+    // film id -> like count change not in films.rate yet, written or not
+    private final Map<Long, Integer> rateDeltas = new HashMap<>();
+    // films of the batch being written, and of the last written batch with the count of written batches
+    private Set<Long> flushingFilms = Set.of();
+    private Set<Long> flushedFilms = Set.of();
+    private long flushGeneration;
+    private boolean closed;
+    private long submitted;
+    private long coalesced;
+    private long flushes;
+    private long flushedLikes;
+    private long failedLikes;
+    private long blockedSubmits;
+    private long blockedMillis;
+    private long rejectedSubmits;
+    private int maxQueued;
+    private long lastFlushMillis;
+
+    private Thread flusher;
+    // called by the flusher without the lock held, with the lost change and whether it was a like
+    private volatile BiConsumer<Like, Boolean> lostLikeHandler = (like, liked) -> {
+    };
+
+    public LikeWriteBehind(FilmDao filmDao,
+                           UserDao userDao,
+                           LikesBitmapIndex likesBitmapIndex,
+                           @Value("${filmorate.likes.write-behind.capacity:65536}") int capacity,
+                           @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                           @Value("${filmorate.likes.write-behind.flush-ms:50}") long flushMillis,
+                           @Value("${filmorate.likes.write-behind.offer-timeout-ms:1000}") long offerTimeoutMillis) {
+        this.filmDao = filmDao;
+        this.userDao = userDao;
+        this.likesBitmapIndex = likesBitmapIndex;
+        this.capacity = Math.max(capacity, batchSize);
+        this.batchSize = batchSize;
+        this.flushMillis = flushMillis;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.ring = new long[this.capacity];
+        this.queuedAt = new long[this.capacity];
+    }
+
+    @PostConstruct
+    public void start() {
+        filmIds = new IdSet(filmDao.findLikeCounts().keySet().stream().mapToLong(Long::longValue).toArray());
+        LongStream.Builder users = LongStream.builder();
+        userDao.forEachUser(user -> users.add(user.getId()));
+        userIds = new IdSet(users.build().toArray());
+        log.info("Like write-behind started, known films: " + filmIds.size() + ", users: " + userIds.size());
+        flusher = new Thread(this::flushLoop, "like-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Films and users are never deleted, so an id found once stays valid; ids created after the start
+    // are looked up in the database on first use. Ids are INTEGER columns: a larger one can not exist, and
+    // queue keys and the id bitmaps hold 31 bits of each.
+    public void checkIds(long filmId, long userId) {
+        if (userId <= 0 || userId > Integer.MAX_VALUE) {
+            throw new UserNotFoundException("User with id \"" + userId + "\" not found.");
+        }
+        if (filmId <= 0 || filmId > Integer.MAX_VALUE) {
+            throw new FilmNotFoundException("Film with id \"" + filmId + "\" not found.");
+        }
+        if (!userIds.contains(userId)) {
+            userDao.checkUserExistence(userId);
+            userIds.add(userId);
+        }
+        if (!filmIds.contains(filmId)) {
+            filmDao.checkFilmExistence(filmId);
+            filmIds.add(filmId);
+        }
+    }
+
+    // Queues a like or an unlike. Returns the change of the film's like count: 1, -1 or 0 when
+    // the like is already in the requested state.
+    public int submit(long filmId, long userId, boolean like) {
+        checkIds(filmId, userId);
+        long key = filmId << 32 | userId;
+        synchronized (lock) {
+            long blockedSince = 0;
+            while (true) {
+                if (closed) {
+                    rejectedSubmits++;
+                    throw new LikeQueueFullException("Like queue is closed.");
+                }
+                Boolean queued = pending.get(key);
+                boolean current = queued != null ? queued : likesBitmapIndex.hasLiked(userId, filmId);
+                if (current == like) {
+                    return 0;
+                }
+                if (queued != null) {
+                    // the opposite change is still queued: both are dropped
+                    pending.remove(key);
+                    likedAt.remove(key);
+                    coalesced++;
+                    break;
+                }
+                if (size < capacity) {
+                    enqueue(key, like);
+                    break;
+                }
+                long now = System.currentTimeMillis();
+                if (blockedSince == 0) {
+                    blockedSince = now;
+                    blockedSubmits++;
+                } else if (now - blockedSince >= offerTimeoutMillis) {
+                    blockedMillis += now - blockedSince;
+                    rejectedSubmits++;
+                    throw new LikeQueueFullException("Like queue is full, " + size + " changes are waiting.");
+                }
+                try {
+                    lock.wait(offerTimeoutMillis - (now - blockedSince));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new LikeQueueFullException("Interrupted while waiting for the like queue.");
+                }
+            }
+            if (blockedSince != 0) {
+                blockedMillis += System.currentTimeMillis() - blockedSince;
+            }
+            submitted++;
+            int delta = like ? 1 : -1;
+            addRateDelta(filmId, delta);
+            if (like) {
+                likesBitmapIndex.addLike(userId, filmId);
+            } else {
+                likesBitmapIndex.removeLike(userId, filmId);
+            }
+            return delta;
+        }
+    }
+
+    public void setLostLikeHandler(BiConsumer<Like, Boolean> lostLikeHandler) {
+        this.lostLikeHandler = lostLikeHandler;
+    }
+
+    // Likes and unlikes of the film that films.rate does not count yet.
+    public int findRateDelta(long filmId) {
+        synchronized (lock) {
+            return rateDeltas.getOrDefault(filmId, 0);
+        }
+    }
+
+    // Loads films and adds to their rates the likes still queued for them. When a batch with one of the
+    // loaded films was committed while the load ran, the stored rate may or may not count it, so the load
+    // is repeated after the flush has taken the batch's deltas back.
+    // Loaded films may be shared by the cache, so a changed rate goes to a copy.
+    public List<Film> withQueuedLikes(Supplier<List<Film>> load) {
+        while (true) {
+            long generation;
+            synchronized (lock) {
+                generation = flushGeneration;
+            }
+            List<Film> films = load.get();
+            synchronized (lock) {
+                if (!overlapsFlush(films, generation)) {
+                    return films.stream().map(this::withRateDelta).collect(Collectors.toList());
+                }
+                while (films.stream().anyMatch(film -> flushingFilms.contains(film.getId()))) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new LikeQueueFullException("Interrupted while waiting for a like flush.");
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean overlapsFlush(List<Film> films, long generation) {
+        if (flushGeneration > generation + 1) {
+            return true;
+        }
+        for (Film film : films) {
+            if (flushingFilms.contains(film.getId()) ||
+                    (flushGeneration == generation + 1 && flushedFilms.contains(film.getId()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Film withRateDelta(Film film) {
+        int delta = rateDeltas.getOrDefault(film.getId(), 0);
+        if (delta == 0) {
+            return film;
+        }
+        Film copy = Film.builder()
+                .id(film.getId())
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .mpa(film.getMpa())
+                .rate(film.getRate() + delta)
+                .build();
+        copy.getGenres().addAll(film.getGenres());
+        return copy;
+    }
+
+    public LikeQueueStats getStats() {
+        synchronized (lock) {
+            return new LikeQueueStats(capacity, size, pending.size(), maxQueued, submitted, coalesced, flushes,
+                    flushedLikes, failedLikes, blockedSubmits, blockedMillis, rejectedSubmits, lastFlushMillis);
+        }
+    }
+
+    // Stops taking likes and waits until everything queued is written.
+    @PreDestroy
+    public void close() throws InterruptedException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        flusher.join();
+        log.info("Like write-behind stopped after " + flushedLikes + " likes in " + flushes + " flushes.");
+    }
+
+    private void enqueue(long key, boolean like) {
+        int tail = (head + size) % capacity;
+        ring[tail] = key;
+        queuedAt[tail] = System.currentTimeMillis();
+        size++;
+        maxQueued = Math.max(maxQueued, size);
+        pending.put(key, like);
+        if (like) {
+            likedAt.put(key, LocalDateTime.now());
+        }
+        if (size == 1 || size == batchSize) {
+            lock.notifyAll();
+        }
+    }
+
+    private void addRateDelta(long filmId, int delta) {
+        rateDeltas.merge(filmId, delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<Like> added = new ArrayList<>();
+            List<Like> removed = new ArrayList<>();
+            synchronized (lock) {
+                try {
+                    awaitBatch();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (size == 0) {
+                    return;
+                }
+                drain(added, removed);
+                flushingFilms = new HashSet<>();
+                added.forEach(like -> flushingFilms.add(like.getFilmId()));
+                removed.forEach(like -> flushingFilms.add(like.getFilmId()));
+                lock.notifyAll();
+            }
+            write(added, removed);
+        }
+    }
+
+    // Returns when a batch is due, or when the queue is closed.
+    private void awaitBatch() throws InterruptedException {
+        while (!closed && size < batchSize) {
+            if (size == 0) {
+                lock.wait();
+                continue;
+            }
+            long wait = queuedAt[head] + flushMillis - System.currentTimeMillis();
+            if (wait <= 0) {
+                return;
+            }
+            lock.wait(wait);
+        }
+    }
+
+    private void drain(List<Like> added, List<Like> removed) {
+        for (int taken = Math.min(size, batchSize); taken > 0; taken--) {
+            long key = ring[head];
+            head = (head + 1) % capacity;
+            size--;
+            Boolean like = pending.remove(key);
+            if (like == null) {
+                continue;
+            }
+            if (like) {
+                added.add(new Like(key >>> 32, key & 0xFFFFFFFFL, likedAt.remove(key)));
+            } else {
+                removed.add(new Like(key >>> 32, key & 0xFFFFFFFFL, null));
+            }
+        }
+    }
+
+    private void write(List<Like> added, List<Like> removed) {
+        long start = System.currentTimeMillis();
+        List<Like> lostAdded = new ArrayList<>();
+        List<Like> lostRemoved = new ArrayList<>();
+        try {
+            filmDao.saveLikes(added, removed);
+        } catch (RuntimeException e) {
+            log.warn("Batch of " + (added.size() + removed.size()) + " likes failed, writing them one by one: " +
+                    e.getMessage());
+            for (Like like : added) {
+                if (!writeOne(List.of(like), List.of())) {
+                    lostAdded.add(like);
+                }
+            }
+            for (Like like : removed) {
+                if (!writeOne(List.of(), List.of(like))) {
+                    lostRemoved.add(like);
+                }
+            }
+        }
+        synchronized (lock) {
+            added.forEach(like -> addRateDelta(like.getFilmId(), -1));
+            removed.forEach(like -> addRateDelta(like.getFilmId(), 1));
+            lostAdded.forEach(like -> takeBack(like, true));
+            lostRemoved.forEach(like -> takeBack(like, false));
+            int failed = lostAdded.size() + lostRemoved.size();
+            flushes++;
+            flushedLikes += added.size() + removed.size() - failed;
+            lastFlushMillis = System.currentTimeMillis() - start;
+            flushedFilms = flushingFilms;
+            flushingFilms = Set.of();
+            flushGeneration++;
+            lock.notifyAll();
+        }
+        lostAdded.forEach(like -> lostLikeHandler.accept(like, true));
+        lostRemoved.forEach(like -> lostLikeHandler.accept(like, false));
+        // counted once the indexes are reverted
+        synchronized (lock) {
+            failedLikes += lostAdded.size() + lostRemoved.size();
+        }
+    }
+
+    private boolean writeOne(List<Like> added, List<Like> removed) {
+        try {
+            filmDao.saveLikes(added, removed);
+            return true;
+        } catch (RuntimeException e) {
+            Like like = added.isEmpty() ? removed.get(0) : added.get(0);
+            log.error("Lost " + (added.isEmpty() ? "unlike" : "like") + " of film " + like.getFilmId() +
+                    " by user " + like.getUserId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Puts LikesBitmapIndex back in line with the database after a change could not be written. A change
+    // of the same pair queued since then would now undo what the database already has, so it is dropped.
+    private void takeBack(Like like, boolean liked) {
+        long key = like.getFilmId() << 32 | like.getUserId();
+        if (pending.remove(key) != null) {
+            likedAt.remove(key);
+            addRateDelta(like.getFilmId(), liked ? 1 : -1);
+            coalesced++;
+        } else if (liked) {
+            likesBitmapIndex.removeLike(like.getUserId(), like.getFilmId());
+        } else {
+            likesBitmapIndex.addLike(like.getUserId(), like.getFilmId());
+        }
+    }
+
+}
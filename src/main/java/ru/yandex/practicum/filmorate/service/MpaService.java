@@ -2,7 +2,7 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import ru.yandex.practicum.filmorate.dao.MpaDao;
+import ru.yandex.practicum.filmorate.dao.impl.DictionaryCache;
 import ru.yandex.practicum.filmorate.model.Mpa;
 
 import java.util.List;
@@ -10,15 +10,14 @@ import java.util.List;
 @Service
 @RequiredArgsConstructor
 public class MpaService {
-    private final MpaDao mpaDao;
+    private final DictionaryCache dictionaryCache;
 
     public List<Mpa> findAll() {
-        return mpaDao.findAll();
+        return dictionaryCache.findAllMpa();
     }
 
     public Mpa findMpaById(Long id) {
-        mpaDao.checkMpaExistence(id);
-        return mpaDao.findMpaById(id);
+        return dictionaryCache.findMpaById(id);
     }
 
 }
@@ -0,0 +1,275 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.UserDao;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Imports users from NDJSON (one user per line) and friendships from an edge list
+// ("login friendLogin" per line). Files are read line by line, uniqueness is checked against
+// in-memory sets loaded from the database, rows are written in batches of filmorate.import.batch-size,
+// every batch is committed on its own.
+@Service
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UserImportService {
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final int MAX_EMAIL_LENGTH = 254;
+    private static final int MAX_LOGIN_LENGTH = 40;
+    private static final int MAX_NAME_LENGTH = 40;
+
+    UserDao userDao;
+    FriendGraph friendGraph;
+    Validator validator;
+    ObjectReader userReader;
+
+    @NonFinal
+    @Value("${filmorate.import.batch-size:500}")
+    int batchSize;
+
+    @NonFinal
+    @Value("${filmorate.import.progress-interval:100000}")
+    int progressInterval;
+
+    public UserImportService(UserDao userDao, FriendGraph friendGraph, Validator validator, ObjectMapper objectMapper) {
+        this.userDao = userDao;
+        this.friendGraph = friendGraph;
+        this.validator = validator;
+        this.userReader = objectMapper.readerFor(User.class);
+    }
+
+    public ImportReport importUsers(InputStream input) throws IOException {
+        Set<String> emails = new HashSet<>();
+        Set<String> logins = new HashSet<>();
+        userDao.forEachUser(user -> {
+            emails.add(user.getEmail());
+            logins.add(user.getLogin());
+        });
+
+        Progress progress = new Progress("users");
+        List<User> batch = new ArrayList<>(batchSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                progress.read++;
+                User user;
+                try {
+                    user = userReader.readValue(line);
+                } catch (JsonProcessingException e) {
+                    progress.skip("invalid JSON: " + e.getOriginalMessage());
+                    continue;
+                }
+                String error = validate(user);
+                if (error == null && emails.contains(user.getEmail())) {
+                    error = "email \"" + user.getEmail() + "\" is already taken";
+                }
+                if (error == null && logins.contains(user.getLogin())) {
+                    error = "login \"" + user.getLogin() + "\" is already taken";
+                }
+                if (error != null) {
+                    progress.skip(error);
+                    continue;
+                }
+                if (user.getName() == null || user.getName().isBlank()) {
+                    user.setName(user.getLogin());
+                }
+                emails.add(user.getEmail());
+                logins.add(user.getLogin());
+                batch.add(user);
+                if (batch.size() == batchSize) {
+                    insertUsers(batch, progress, emails, logins);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            insertUsers(batch, progress, emails, logins);
+        }
+        return progress.finish();
+    }
+
+    public ImportReport importFriendships(InputStream input) throws IOException {
+        Map<String, Long> idsByLogin = new HashMap<>();
+        userDao.forEachUser(user -> idsByLogin.put(user.getLogin(), user.getId()));
+        Set<Long> friendships = new HashSet<>();
+        userDao.forEachFriendship(friendship ->
+                friendships.add(edgeKey(friendship.getUserId(), friendship.getFriendId())));
+
+        Progress progress = new Progress("friendships");
+        List<Friendship> batch = new ArrayList<>(batchSize);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                progress.read++;
+                String[] logins = line.trim().split("[\\s,;]+");
+                if (logins.length != 2) {
+                    progress.skip("expected two logins, got \"" + line + "\"");
+                    continue;
+                }
+                Long userId = idsByLogin.get(logins[0]);
+                Long friendId = idsByLogin.get(logins[1]);
+                if (userId == null || friendId == null) {
+                    progress.skip("unknown login \"" + (userId == null ? logins[0] : logins[1]) + "\"");
+                    continue;
+                }
+                if (userId.equals(friendId)) {
+                    progress.skip("user \"" + logins[0] + "\" can't be a friend of itself");
+                    continue;
+                }
+                if (!friendships.add(edgeKey(userId, friendId))) {
+                    progress.skip("friendship \"" + logins[0] + "\" -> \"" + logins[1] + "\" already exists");
+                    continue;
+                }
+                batch.add(new Friendship(userId, friendId));
+                if (batch.size() == batchSize) {
+                    insertFriendships(batch, progress, friendships);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            insertFriendships(batch, progress, friendships);
+        }
+        return progress.finish();
+    }
+
+    private String validate(User user) {
+        if (user == null) {
+            return "user can't be null";
+        }
+        for (ConstraintViolation<User> violation : validator.validate(user)) {
+            return violation.getMessage();
+        }
+        if (user.getEmail() == null || user.getEmail().isBlank()) {
+            return "field \"email\" can't be empty";
+        }
+        if (user.getEmail().length() > MAX_EMAIL_LENGTH) {
+            return "field \"email\" is longer than " + MAX_EMAIL_LENGTH + " characters";
+        }
+        if (user.getLogin().length() > MAX_LOGIN_LENGTH) {
+            return "field \"login\" is longer than " + MAX_LOGIN_LENGTH + " characters";
+        }
+        if (user.getName() != null && user.getName().length() > MAX_NAME_LENGTH) {
+            return "field \"name\" is longer than " + MAX_NAME_LENGTH + " characters";
+        }
+        if (user.getBirthday() == null) {
+            return "field \"birthday\" can't be null";
+        }
+        return null;
+    }
+
+    private void insertUsers(List<User> batch, Progress progress, Set<String> emails, Set<String> logins) {
+        try {
+            userDao.createAll(batch);
+            progress.imported(batch.size());
+        } catch (DataAccessException e) {
+            for (User user : batch) {
+                emails.remove(user.getEmail());
+                logins.remove(user.getLogin());
+            }
+            progress.failed(batch.size(), e);
+        }
+        batch.clear();
+    }
+
+    private void insertFriendships(List<Friendship> batch, Progress progress, Set<Long> friendships) {
+        try {
+            userDao.addFriendships(batch);
+            for (Friendship friendship : batch) {
+                friendGraph.addFriend(friendship.getUserId(), friendship.getFriendId());
+            }
+            progress.imported(batch.size());
+        } catch (DataAccessException e) {
+            for (Friendship friendship : batch) {
+                friendships.remove(edgeKey(friendship.getUserId(), friendship.getFriendId()));
+            }
+            progress.failed(batch.size(), e);
+        }
+        batch.clear();
+    }
+
+    // User ids are INTEGER columns, so a pair of them fits into one long.
+    private static long edgeKey(long userId, long friendId) {
+        return (userId << 32) | friendId;
+    }
+
+    private final class Progress {
+        private final String name;
+        private final long start = System.currentTimeMillis();
+        private final List<String> errors = new ArrayList<>();
+        private long read;
+        private long imported;
+        private long skipped;
+        private long nextReport = progressInterval;
+
+        private Progress(String name) {
+            this.name = name;
+        }
+
+        private void skip(String error) {
+            skipped++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("line " + read + ": " + error);
+            }
+        }
+
+        private void imported(int count) {
+            imported += count;
+            if (imported >= nextReport) {
+                nextReport += progressInterval;
+                log.info("Import of " + name + ": " + imported + " imported, " + skipped + " skipped, " +
+                        rowsPerSecond() + " rows/s.");
+            }
+        }
+
+        private void failed(int count, DataAccessException e) {
+            skipped += count;
+            log.warn("Batch of " + count + " " + name + " was not saved: " + e.getMessage());
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("line " + read + ": batch of " + count + " " + name + " ending here was not saved: " +
+                        e.getMostSpecificCause().getMessage());
+            }
+        }
+
+        private long rowsPerSecond() {
+            return read * 1000 / Math.max(1, System.currentTimeMillis() - start);
+        }
+
+        private ImportReport finish() {
+            long duration = System.currentTimeMillis() - start;
+            log.info("Import of " + name + " finished: " + read + " read, " + imported + " imported, " +
+                    skipped + " skipped in " + duration + " ms.");
+            return new ImportReport(read, imported, skipped, duration, rowsPerSecond(), errors);
+        }
+    }
+
+}
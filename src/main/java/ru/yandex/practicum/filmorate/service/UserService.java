@@ -4,11 +4,20 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dao.UserDao;
+import ru.yandex.practicum.filmorate.exceptions.CustomValidationException;
+import ru.yandex.practicum.filmorate.index.FriendFeed;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
+import ru.yandex.practicum.filmorate.model.FriendPath;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.MultiGetResponse;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserPatch;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -17,6 +26,32 @@ import java.util.*;
 public class UserService {
 
     final UserDao userDao;
+    final FriendGraph friendGraph;
+    final FriendFeed friendFeed;
+    // striped by user pair: a friend request and a removal of the same pair reach the link table
+    // and FriendGraph in the same order
+    final Object[] friendLocks = newLocks(64);
+
+    @Value("${filmorate.pagination.max-page-size:1000}")
+    int maxPageSize;
+
+    @Value("${filmorate.pagination.max-unpaged:10000}")
+    int maxUnpaged;
+
+    @Value("${filmorate.multiget.max-ids:100}")
+    int maxMultiGetIds;
+
+    @Value("${filmorate.friends.suggestions.max-fan-out:1000}")
+    int maxSuggestionsFanOut;
+
+    @Value("${filmorate.friends.path.max-depth:6}")
+    int maxPathDepth;
+
+    @Value("${filmorate.friends.path.max-nodes:200000}")
+    int maxPathNodes;
+
+    @Value("${filmorate.friends.path.timeout-ms:200}")
+    long pathTimeoutMillis;
 
     private User checkUserName(User user) {
         if (user.getName() == null || user.getName().isEmpty() || user.getName().isBlank()) {
@@ -32,16 +67,34 @@ public class UserService {
         return userDao.create(checkUserName(user));
     }
 
+    // The DAO reports an unknown user itself.
     public User update(User user) {
-        userDao.checkUserExistence(user.getId());
         return userDao.update(checkUserName(user));
     }
 
+    public User patch(Long id, UserPatch patch) {
+        userDao.checkUserExistence(id);
+        User user = userDao.findUserById(id);
+        if (patch.getName() != null && patch.getName().isBlank()) {
+            patch.setName(patch.getLogin() == null ? user.getLogin() : patch.getLogin());
+            log.info("Blank value of field \"name\" was replaced with login " + patch.getName());
+        }
+        if (patch.isEmpty()) {
+            return user;
+        }
+        userDao.patch(id, patch);
+        return userDao.findUserById(id);
+    }
+
     public User addFriend(Long userId, Long friendId) {
         userDao.checkUserExistence(userId);
         userDao.checkUserExistence(friendId);
 
-        userDao.addFriend(userId, friendId);
+        synchronized (friendLock(userId, friendId)) {
+            userDao.addFriend(userId, friendId);
+            friendGraph.addFriend(userId, friendId);
+        }
+        friendFeed.friendsChanged(userId);
         log.info("Users with id \"" + userId +
                 "\" and \"" + friendId +
                 "\" are friends now!");
@@ -49,7 +102,11 @@ public class UserService {
     }
 
     public User removeFriend(Long userId, Long friendId) {
-        userDao.removeFriend(userId, friendId);
+        synchronized (friendLock(userId, friendId)) {
+            userDao.removeFriend(userId, friendId);
+            friendGraph.removeFriend(userId, friendId);
+        }
+        friendFeed.friendsChanged(userId);
         log.info("Users with id \"" + userId +
                 "\" and \"" + friendId +
                 "\" are not friends anymore!");
@@ -58,19 +115,85 @@ public class UserService {
 
     public List<User> findFriends(Long userId) {
         userDao.checkUserExistence(userId);
-        return userDao.findFriends(userId);
+        return findUsers(friendGraph.findFriends(userId));
     }
 
     public List<User> findCommonFriends(Long userId, Long otherUserId) {
-        return userDao.findCommonFriends(userId, otherUserId);
+        return findUsers(friendGraph.findCommonFriends(userId, otherUserId));
+    }
+
+    public List<FriendSuggestion> findFriendSuggestions(Long userId, int count) {
+        userDao.checkUserExistence(userId);
+        Map<Long, Integer> suggestions = friendGraph.findSuggestions(userId,
+                Math.min(count, maxPageSize), maxSuggestionsFanOut);
+        List<FriendSuggestion> result = new ArrayList<>(suggestions.size());
+        for (User user : userDao.findUsersByIds(suggestions.keySet())) {
+            result.add(new FriendSuggestion(user, suggestions.get(user.getId())));
+        }
+        return result;
+    }
+
+    public FriendPath findPath(Long userId, Long otherUserId, Integer maxDepth) {
+        userDao.checkUserExistence(userId);
+        userDao.checkUserExistence(otherUserId);
+        FriendGraph.PathResult result = friendGraph.findPath(userId, otherUserId,
+                maxDepth == null ? maxPathDepth : Math.min(maxDepth, maxPathDepth), maxPathNodes, pathTimeoutMillis);
+        if (result.isBudgetExceeded()) {
+            log.warn("Path search from user " + userId + " to user " + otherUserId + " ran out of budget.");
+        }
+        return new FriendPath(findUsers(result.getUserIds()), result.isBudgetExceeded());
+    }
+
+    private Object friendLock(Long userId, Long friendId) {
+        return friendLocks[(int) ((userId * 31 + friendId) & (friendLocks.length - 1))];
+    }
+
+    private static Object[] newLocks(int count) {
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    private List<User> findUsers(long[] ids) {
+        return userDao.findUsersByIds(Arrays.stream(ids)
+                .boxed()
+                .collect(Collectors.toList()));
     }
 
+    // Refuses rather than cuts a list longer than max-unpaged, so a client never takes a part for the whole.
     public List<User> findAll() {
-        return userDao.findAll();
+        List<User> users = userDao.findPage(0, maxUnpaged + 1);
+        if (users.size() > maxUnpaged) {
+            throw new CustomValidationException("More than " + maxUnpaged + " users, " +
+                    "load them by pages with after and limit.");
+        }
+        return users;
+    }
+
+    public List<User> findPage(Long afterId, Integer limit) {
+        return userDao.findPage(afterId == null ? 0 : afterId,
+                limit == null ? maxPageSize : Math.min(limit, maxPageSize));
     }
 
     public User findUserById(Long id) {
         userDao.checkUserExistence(id);
         return userDao.findUserById(id);
     }
+
+    public MultiGetResponse<User> findUsersByIds(List<Long> ids) {
+        Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+        if (uniqueIds.size() > maxMultiGetIds) {
+            throw new CustomValidationException("Can't load more than " + maxMultiGetIds + " users at once.");
+        }
+        List<User> users = userDao.findUsersByIds(uniqueIds);
+        Set<Long> foundIds = users.stream()
+                .map(User::getId)
+                .collect(Collectors.toSet());
+        List<Long> missingIds = uniqueIds.stream()
+                .filter(id -> !foundIds.contains(id))
+                .collect(Collectors.toList());
+        return new MultiGetResponse<>(users, missingIds);
+    }
 }
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.dao.DataIntegrityViolationException;
+
+// Column constraints of the schema that the in-memory storages check themselves, so a row the
+// database would refuse is refused in memory as well, and never reaches the journal.
+public final class Columns {
+
+    private Columns() {
+    }
+
+    public static void checkNotNull(String column, Object value) {
+        if (value == null) {
+            throw new DataIntegrityViolationException("NULL not allowed for column \"" + column + "\".");
+        }
+    }
+
+    // VARCHAR(maxLength); null passes, it is checked by checkNotNull where the column is NOT NULL.
+    public static void checkLength(String column, String value, int maxLength) {
+        if (value != null && value.length() > maxLength) {
+            throw new DataIntegrityViolationException("Value too long for column \"" + column +
+                    " VARCHAR(" + maxLength + ")\": " + value.length() + " characters.");
+        }
+    }
+
+}
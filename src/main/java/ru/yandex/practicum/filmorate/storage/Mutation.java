@@ -0,0 +1,177 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// A change of the in-memory storage as it is written to the journal. Every mutation sets a value
+// (the whole film or user, the presence of a like or a friendship), so applying it twice does no harm.
+// Films keep only the ids of mpa and genres; names are resolved again when a film is restored.
+public final class Mutation {
+
+    public enum Type {
+        PUT_FILM, PUT_USER, ADD_LIKE, REMOVE_LIKE, ADD_FRIEND, REMOVE_FRIEND
+    }
+
+    private final Type type;
+    private final Film film;
+    private final User user;
+    // film and user of a like, user and friend of a friendship
+    private final long first;
+    private final long second;
+    private final LocalDateTime time;
+
+    private Mutation(Type type, Film film, User user, long first, long second, LocalDateTime time) {
+        this.type = type;
+        this.film = film;
+        this.user = user;
+        this.first = first;
+        this.second = second;
+        this.time = time;
+    }
+
+    public static Mutation putFilm(Film film) {
+        return new Mutation(Type.PUT_FILM, film, null, 0, 0, null);
+    }
+
+    public static Mutation putUser(User user) {
+        return new Mutation(Type.PUT_USER, null, user, 0, 0, null);
+    }
+
+    public static Mutation addLike(long filmId, long userId, LocalDateTime likedAt) {
+        return new Mutation(Type.ADD_LIKE, null, null, filmId, userId, likedAt);
+    }
+
+    public static Mutation removeLike(long filmId, long userId) {
+        return new Mutation(Type.REMOVE_LIKE, null, null, filmId, userId, null);
+    }
+
+    public static Mutation addFriend(long userId, long friendId) {
+        return new Mutation(Type.ADD_FRIEND, null, null, userId, friendId, null);
+    }
+
+    public static Mutation removeFriend(long userId, long friendId) {
+        return new Mutation(Type.REMOVE_FRIEND, null, null, userId, friendId, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Film getFilm() {
+        return film;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public long getFilmId() {
+        return first;
+    }
+
+    public long getUserId() {
+        return type == Type.ADD_LIKE || type == Type.REMOVE_LIKE ? second : first;
+    }
+
+    public long getFriendId() {
+        return second;
+    }
+
+    public LocalDateTime getLikedAt() {
+        return time;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        switch (type) {
+            case PUT_FILM:
+                out.writeLong(film.getId());
+                out.writeUTF(film.getName());
+                writeNullableString(out, film.getDescription());
+                out.writeLong(film.getReleaseDate().toEpochDay());
+                out.writeInt(film.getDuration());
+                out.writeLong(film.getMpa() == null ? 0 : film.getMpa().getId());
+                out.writeShort(film.getGenres().size());
+                for (Genre genre : film.getGenres()) {
+                    out.writeLong(genre.getId());
+                }
+                break;
+            case PUT_USER:
+                out.writeLong(user.getId());
+                out.writeUTF(user.getEmail());
+                out.writeUTF(user.getLogin());
+                out.writeUTF(user.getName());
+                out.writeLong(user.getBirthday() == null ? Long.MIN_VALUE : user.getBirthday().toEpochDay());
+                break;
+            case ADD_LIKE:
+                out.writeLong(first);
+                out.writeLong(second);
+                out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(time.getNano());
+                break;
+            default:
+                out.writeLong(first);
+                out.writeLong(second);
+        }
+    }
+
+    static Mutation readFrom(DataInputStream in) throws IOException {
+        Type type = Type.values()[in.readByte()];
+        switch (type) {
+            case PUT_FILM:
+                Film film = Film.builder()
+                        .id(in.readLong())
+                        .name(in.readUTF())
+                        .description(readNullableString(in))
+                        .releaseDate(LocalDate.ofEpochDay(in.readLong()))
+                        .duration(in.readInt())
+                        .build();
+                long mpaId = in.readLong();
+                if (mpaId != 0) {
+                    film.setMpa(new Mpa(mpaId, null));
+                }
+                for (int i = in.readShort(); i > 0; i--) {
+                    film.getGenres().add(new Genre(in.readLong(), null));
+                }
+                return putFilm(film);
+            case PUT_USER:
+                User user = User.builder()
+                        .id(in.readLong())
+                        .email(in.readUTF())
+                        .login(in.readUTF())
+                        .name(in.readUTF())
+                        .build();
+                long birthday = in.readLong();
+                if (birthday != Long.MIN_VALUE) {
+                    user.setBirthday(LocalDate.ofEpochDay(birthday));
+                }
+                return putUser(user);
+            case ADD_LIKE:
+                return addLike(in.readLong(), in.readLong(),
+                        LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+            default:
+                return new Mutation(type, null, null, in.readLong(), in.readLong(), null);
+        }
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.JournalStats;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+// The in-memory storages start empty and lose their data on restart.
+@Component
+@Profile("memory")
+@ConditionalOnProperty(name = "filmorate.memory.wal.enabled", havingValue = "false", matchIfMissing = true)
+public class NoStorageJournal implements StorageJournal {
+
+    @Override
+    public long append(Mutation mutation) {
+        return 0;
+    }
+
+    @Override
+    public void awaitDurable(long ticket) {
+    }
+
+    @Override
+    public void recover(Set<Mutation.Type> types, Consumer<Mutation> consumer) {
+    }
+
+    @Override
+    public JournalStats getStats() {
+        return new JournalStats(false, 0, 0, 0, 0);
+    }
+
+}
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.JournalStats;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Durability of the in-memory storages. A storage appends a mutation and then applies it while holding
+// the lock that orders mutations of the same key, so a mutation the journal refused is never applied.
+// It waits for the returned ticket outside of that lock, so concurrent writers share one disk flush.
+// A mutation is therefore served before it is durable: when the journal fails in between, awaitDurable
+// throws and the writer gets an error, but readers keep seeing the change until a restart drops it.
+// The journal refuses everything after a failure and logs how many applied changes it did not write.
+public interface StorageJournal {
+
+    long append(Mutation mutation);
+
+    void awaitDurable(long ticket);
+
+    // Hands over the mutations of the given types written before the restart, oldest first. The journal
+    // is read once; each storage takes its own types from it.
+    void recover(Set<Mutation.Type> types, Consumer<Mutation> consumer);
+
+    JournalStats getStats();
+
+}
@@ -0,0 +1,449 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+import ru.yandex.practicum.filmorate.dao.UserDao;
+import ru.yandex.practicum.filmorate.model.JournalStats;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Journal of the in-memory storages kept in a directory of numbered files: log segments
+// "wal-N.log" and snapshots "snapshot-N.bin", where snapshot N holds the state taken when segment N
+// was started. Every record is its length, its CRC32 and the encoded mutation; a torn record at the
+// end of a file ends that file.
+// Appends are queued and written by a single writer thread, which takes everything queued while the
+// previous flush was running and writes it with one channel write and one force (group commit).
+// The snapshot and the log are read once on start; each storage then takes its own mutations.
+// A snapshot starts a new segment, dumps the storages and then deletes the older files. Writes go on
+// meanwhile, so they may be both in the snapshot and in the new segment; replaying them again gives
+// the same state, since every mutation sets a value.
+@Component
+@Profile("memory")
+@ConditionalOnProperty(name = "filmorate.memory.wal.enabled", havingValue = "true")
+@Slf4j
+public class WriteAheadLog implements StorageJournal {
+
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int MAX_RECORD_SIZE = 1 << 16;
+
+    private final Path dir;
+    private final boolean fsync;
+    private final FilmDao filmDao;
+    private final UserDao userDao;
+
+    private final Object lock = new Object();
+    // encoded records and segment switches not yet written, guarded by lock
+    private List<Object> pending = new ArrayList<>();
+    private long appended;
+    private long durable;
+    private long lastSegment;
+    private boolean closed;
+    private IOException failure;
+    private long commits;
+    private long records;
+
+    // used by the writer thread only
+    private FileChannel channel;
+    private Thread writer;
+
+    // mutations read on start that no storage has taken yet, guarded by lock
+    private List<Mutation> recovered = new ArrayList<>();
+    private int unclaimed;
+    private volatile long lastRecoveryMillis;
+    private volatile long lastRecoveredMutations;
+
+    public WriteAheadLog(@Value("${filmorate.memory.wal.dir:./data/wal}") String dir,
+                         @Value("${filmorate.memory.wal.fsync:true}") boolean fsync,
+                         @Lazy FilmDao filmDao,
+                         @Lazy UserDao userDao) {
+        this.dir = Paths.get(dir);
+        this.fsync = fsync;
+        this.filmDao = filmDao;
+        this.userDao = userDao;
+    }
+
+    // Reads what was written before the restart, then opens a new segment after every existing file,
+    // so recovery never reads a segment being written.
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            lastSegment = files
+                    .mapToLong(path -> Math.max(number(path, LOG_PREFIX, LOG_SUFFIX),
+                            number(path, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)))
+                    .max().orElse(0) + 1;
+        }
+        load();
+        channel = openSegment(lastSegment);
+        writer = new Thread(this::writeLoop, "wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public long append(Mutation mutation) {
+        byte[] record = encode(mutation);
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed.");
+            }
+            pending.add(record);
+            lock.notifyAll();
+            return ++appended;
+        }
+    }
+
+    @Override
+    public void awaitDurable(long ticket) {
+        synchronized (lock) {
+            while (durable < ticket) {
+                if (failure != null) {
+                    throw new IllegalStateException("Write-ahead log failed, the change is kept in memory only " +
+                            "and is lost on restart.", failure);
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the write-ahead log.", e);
+                }
+            }
+        }
+    }
+
+    // Reads the latest snapshot and every log segment from it on.
+    private void load() throws IOException {
+        long start = System.nanoTime();
+        long firstSegment = 0;
+        List<Mutation> mutations = new ArrayList<>();
+        OptionalLong snapshot = listNumbers(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).stream()
+                .mapToLong(Long::longValue)
+                .filter(number -> number < lastSegment)
+                .max();
+        if (snapshot.isPresent()) {
+            firstSegment = snapshot.getAsLong();
+            read(dir.resolve(SNAPSHOT_PREFIX + firstSegment + SNAPSHOT_SUFFIX), mutations::add);
+        }
+        for (long segment : listNumbers(LOG_PREFIX, LOG_SUFFIX)) {
+            if (segment >= firstSegment && segment < lastSegment) {
+                read(dir.resolve(LOG_PREFIX + segment + LOG_SUFFIX), mutations::add);
+            }
+        }
+        synchronized (lock) {
+            recovered = mutations;
+            unclaimed = mutations.size();
+        }
+        lastRecoveredMutations = mutations.size();
+        lastRecoveryMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Recovered " + mutations.size() + " mutations from " + dir +
+                (firstSegment > 0 ? " (snapshot " + firstSegment + ")" : "") +
+                " in " + lastRecoveryMillis + " ms.");
+    }
+
+    // Taken mutations are dropped, so the recovered state is not kept twice once the storages are built.
+    @Override
+    public void recover(Set<Mutation.Type> types, Consumer<Mutation> consumer) {
+        synchronized (lock) {
+            for (int i = 0; i < recovered.size(); i++) {
+                Mutation mutation = recovered.get(i);
+                if (mutation != null && types.contains(mutation.getType())) {
+                    consumer.accept(mutation);
+                    recovered.set(i, null);
+                    unclaimed--;
+                }
+            }
+            if (unclaimed == 0) {
+                recovered = new ArrayList<>();
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${filmorate.memory.wal.snapshot-interval-ms:600000}",
+            fixedDelayString = "${filmorate.memory.wal.snapshot-interval-ms:600000}")
+    public void snapshot() {
+        snapshot(filmDao, userDao);
+    }
+
+    public void snapshot(FilmDao films, UserDao users) {
+        long start = System.nanoTime();
+        long segment;
+        long ticket;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            segment = ++lastSegment;
+            pending.add(segment);
+            lock.notifyAll();
+            ticket = ++appended;
+        }
+        awaitDurable(ticket);
+        Path temporary = dir.resolve(SNAPSHOT_PREFIX + segment + ".tmp");
+        Path target = dir.resolve(SNAPSHOT_PREFIX + segment + SNAPSHOT_SUFFIX);
+        long[] count = {0};
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+                Consumer<Mutation> writer = mutation -> {
+                    try {
+                        out.write(encode(mutation));
+                        count[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+                users.forEachUser(user -> writer.accept(Mutation.putUser(user)));
+                users.forEachFriendship(friendship ->
+                        writer.accept(Mutation.addFriend(friendship.getUserId(), friendship.getFriendId())));
+                films.forEachFilm(film -> writer.accept(Mutation.putFilm(film)));
+                films.forEachLike(like ->
+                        writer.accept(Mutation.addLike(like.getFilmId(), like.getUserId(), like.getLikedAt())));
+            }
+            try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                file.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            for (long number : listNumbers(LOG_PREFIX, LOG_SUFFIX)) {
+                if (number < segment) {
+                    Files.delete(dir.resolve(LOG_PREFIX + number + LOG_SUFFIX));
+                }
+            }
+            for (long number : listNumbers(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (number < segment) {
+                    Files.delete(dir.resolve(SNAPSHOT_PREFIX + number + SNAPSHOT_SUFFIX));
+                }
+            }
+            log.info("Snapshot " + segment + " of " + count[0] + " mutations, " + Files.size(target) +
+                    " bytes written in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Snapshot " + segment + " failed, the log is kept.", e);
+        }
+    }
+
+    // Stops accepting appends, writes what is queued and closes the segment.
+    @PreDestroy
+    public void close() throws InterruptedException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        writer.join();
+        synchronized (lock) {
+            log.info("Write-ahead log closed after " + records + " records in " + commits + " commits.");
+        }
+    }
+
+    @Override
+    public JournalStats getStats() {
+        synchronized (lock) {
+            return new JournalStats(true, lastRecoveryMillis, lastRecoveredMutations, commits, records);
+        }
+    }
+
+    public long getLastRecoveryMillis() {
+        return lastRecoveryMillis;
+    }
+
+    public long getLastRecoveredMutations() {
+        return lastRecoveredMutations;
+    }
+
+    public long getCommits() {
+        synchronized (lock) {
+            return commits;
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                List<Object> batch;
+                long last;
+                synchronized (lock) {
+                    while (pending.isEmpty() && !closed) {
+                        lock.wait();
+                    }
+                    if (pending.isEmpty()) {
+                        break;
+                    }
+                    batch = pending;
+                    pending = new ArrayList<>();
+                    last = appended;
+                }
+                List<ByteBuffer> buffers = new ArrayList<>(batch.size());
+                int written = 0;
+                for (Object item : batch) {
+                    if (item instanceof Long) {
+                        write(buffers);
+                        channel.close();
+                        channel = openSegment((Long) item);
+                    } else {
+                        buffers.add(ByteBuffer.wrap((byte[]) item));
+                        written++;
+                    }
+                }
+                write(buffers);
+                synchronized (lock) {
+                    durable = last;
+                    commits++;
+                    records += written;
+                    lock.notifyAll();
+                }
+            }
+            channel.close();
+        } catch (IOException e) {
+            synchronized (lock) {
+                // the storages applied these when they appended them
+                log.error("Write-ahead log failed, writes are rejected. Up to " + (appended - durable) +
+                        " changes already served from memory were not written and are lost on restart.", e);
+                failure = e;
+                closed = true;
+                lock.notifyAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(List<ByteBuffer> buffers) throws IOException {
+        if (buffers.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] array = buffers.toArray(new ByteBuffer[0]);
+        ByteBuffer lastBuffer = array[array.length - 1];
+        while (lastBuffer.hasRemaining()) {
+            channel.write(array);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        buffers.clear();
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        return FileChannel.open(dir.resolve(LOG_PREFIX + segment + LOG_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private long read(Path path, Consumer<Mutation> consumer) throws IOException {
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return count;
+                }
+                try {
+                    int checksum = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        log.warn("Broken record length in " + path + " after " + count + " records, rest is skipped.");
+                        return count;
+                    }
+                    byte[] payload = in.readNBytes(length);
+                    if (payload.length < length || checksum(payload) != checksum) {
+                        log.warn("Torn record in " + path + " after " + count + " records, rest is skipped.");
+                        return count;
+                    }
+                    consumer.accept(decode(payload));
+                    count++;
+                } catch (EOFException e) {
+                    log.warn("Torn record in " + path + " after " + count + " records, rest is skipped.");
+                    return count;
+                }
+            }
+        }
+    }
+
+    private static byte[] encode(Mutation mutation) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            mutation.writeTo(new DataOutputStream(payload));
+            byte[] bytes = payload.toByteArray();
+            // read would take a longer record for a broken one and drop the rest of its file
+            if (bytes.length > MAX_RECORD_SIZE) {
+                throw new IllegalArgumentException("Mutation " + mutation.getType() + " of " + bytes.length +
+                        " bytes is longer than a journal record may be.");
+            }
+            ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.length + 8);
+            DataOutputStream out = new DataOutputStream(record);
+            out.writeInt(bytes.length);
+            out.writeInt(checksum(bytes));
+            out.write(bytes);
+            return record.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Mutation decode(byte[] payload) throws IOException {
+        try (InputStream in = new ByteArrayInputStream(payload)) {
+            return Mutation.readFrom(new DataInputStream(in));
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private List<Long> listNumbers(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .map(path -> number(path, prefix, suffix))
+                    .filter(number -> number > 0)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long number(Path path, String prefix, String suffix) {
+        String name = path.getFileName().toString();
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
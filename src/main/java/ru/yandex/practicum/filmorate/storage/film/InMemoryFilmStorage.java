@@ -1,57 +1,359 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+import ru.yandex.practicum.filmorate.dao.UserDao;
+import ru.yandex.practicum.filmorate.dao.impl.DictionaryCache;
 import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPatch;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.Columns;
+import ru.yandex.practicum.filmorate.storage.Mutation;
+import ru.yandex.practicum.filmorate.storage.StorageJournal;
 
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+// FilmDao kept in memory, used instead of the JDBC DAOs under the "memory" profile. Films are kept
+// in a concurrent map sorted by id, likes in a concurrent map per film. Results match FilmDaoImpl:
+// genres ordered by id with names from the dictionaries, rate is the number of likes, a repeated
+// like is a no-op. Stored films are never handed out, every read returns a copy. Every change is
+// appended to the StorageJournal, which may keep it on disk across restarts, before it is applied;
+// see StorageJournal for what is served when the journal fails.
 @Component
+@Profile("memory")
 @Slf4j
-@FieldDefaults(level = AccessLevel.PRIVATE)
-public class InMemoryFilmStorage implements FilmStorage {
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class InMemoryFilmStorage implements FilmDao {
+    private static final Set<Mutation.Type> MUTATIONS =
+            EnumSet.of(Mutation.Type.PUT_FILM, Mutation.Type.ADD_LIKE, Mutation.Type.REMOVE_LIKE);
 
-    final Map<Long, Film> films = new HashMap<>();
+    UserDao userDao;
+    DictionaryCache dictionaryCache;
+    StorageJournal journal;
 
-    Long filmIdCounter = 0L;
+    ConcurrentNavigableMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    // film id -> user id -> time of the like
+    Map<Long, Map<Long, LocalDateTime>> likes = new ConcurrentHashMap<>();
+    AtomicLong filmIdCounter = new AtomicLong();
 
-    Long generateFilmId() {
-        return ++filmIdCounter;
+    // Rebuilds films and likes from the journal before the storage is handed to anyone.
+    @PostConstruct
+    public void recover() {
+        journal.recover(MUTATIONS, mutation -> {
+            switch (mutation.getType()) {
+                case PUT_FILM:
+                    Film film = normalize(mutation.getFilm(), mutation.getFilm().getId());
+                    films.put(film.getId(), film);
+                    filmIdCounter.accumulateAndGet(film.getId(), Math::max);
+                    break;
+                case ADD_LIKE:
+                    likes.computeIfAbsent(mutation.getFilmId(), id -> new ConcurrentHashMap<>())
+                            .put(mutation.getUserId(), mutation.getLikedAt());
+                    break;
+                case REMOVE_LIKE:
+                    Map<Long, LocalDateTime> filmLikes = likes.get(mutation.getFilmId());
+                    if (filmLikes != null) {
+                        filmLikes.remove(mutation.getUserId());
+                    }
+                    break;
+                default:
+            }
+        });
     }
 
     @Override
     public Film create(Film film) {
-        film.setId(generateFilmId());
-        films.put(film.getId(), film);
-        log.info("New film created: " + film);
-        return film;
+        Film stored = normalize(film, filmIdCounter.incrementAndGet());
+        journal.awaitDurable(save(stored));
+        log.info("New film created: " + stored);
+        return copy(stored);
+    }
+
+    // All films are checked before the first one is stored, so a batch is saved whole or not at all.
+    @Override
+    public List<Long> createAll(List<Film> newFilms) {
+        List<Film> stored = new ArrayList<>(newFilms.size());
+        for (Film film : newFilms) {
+            stored.add(normalize(film, 0));
+        }
+        List<Long> ids = new ArrayList<>(stored.size());
+        long ticket = 0;
+        for (Film film : stored) {
+            film.setId(filmIdCounter.incrementAndGet());
+            ticket = save(film);
+            ids.add(film.getId());
+        }
+        journal.awaitDurable(ticket);
+        return ids;
     }
 
     @Override
     public Film update(Film film) {
-        films.replace(film.getId(), film);
-        log.info("Film updated: " + film);
-        return film;
+        Film stored = normalize(film, film.getId());
+        long ticket;
+        synchronized (this) {
+            checkFilmExistence(film.getId());
+            ticket = save(stored);
+        }
+        journal.awaitDurable(ticket);
+        log.info("Film updated: " + stored);
+        return copy(stored);
+    }
+
+    // Returns 1 when a field other than genres was written, as FilmDaoImpl counts updated film rows.
+    @Override
+    public int patch(Long id, FilmPatch patch) {
+        boolean updated = false;
+        long ticket;
+        synchronized (this) {
+            Film old = films.get(id);
+            if (old == null) {
+                return 0;
+            }
+            Film film = copy(old);
+            if (patch.getName() != null) {
+                film.setName(patch.getName());
+                updated = true;
+            }
+            if (patch.getDescription() != null) {
+                film.setDescription(patch.getDescription());
+                updated = true;
+            }
+            if (patch.getReleaseDate() != null) {
+                film.setReleaseDate(patch.getReleaseDate());
+                updated = true;
+            }
+            if (patch.getDuration() != null) {
+                film.setDuration(patch.getDuration());
+                updated = true;
+            }
+            if (patch.getMpa() != null) {
+                film.setMpa(patch.getMpa());
+                updated = true;
+            }
+            if (patch.getGenres() != null) {
+                film.getGenres().clear();
+                film.getGenres().addAll(patch.getGenres());
+            }
+            ticket = save(normalize(film, id));
+        }
+        journal.awaitDurable(ticket);
+        return updated ? 1 : 0;
+    }
+
+    // Film writes are serialized, so the journal keeps them in the order they were applied.
+    private synchronized long save(Film film) {
+        long ticket = journal.append(Mutation.putFilm(film));
+        films.put(film.getId(), film);
+        return ticket;
     }
 
     @Override
     public List<Film> findAll() {
-        return new ArrayList<>(films.values());
+        return films.values().stream()
+                .map(this::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return films.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(this::copy)
+                .collect(Collectors.toList());
     }
 
     @Override
-    public Film findFilmById(Long filmId) {
-        if (!films.containsKey(filmId)) {
-            throw new FilmNotFoundException("Film with id \"" + filmId + "\" not found.");
+    public Film findFilmById(Long id) {
+        Film film = films.get(id);
+        if (film == null) {
+            throw new FilmNotFoundException("Film with id \"" + id + "\" not found.");
         }
-        return films.get(filmId);
+        return copy(film);
     }
 
-}
+    @Override
+    public List<Film> findFilmsByIds(Collection<Long> ids) {
+        List<Film> found = new ArrayList<>();
+        for (Long id : ids) {
+            Film film = films.get(id);
+            if (film != null) {
+                found.add(copy(film));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Film addLike(Long filmId, Long userId) {
+        checkFilmExistence(filmId);
+        userDao.checkUserExistence(userId);
+        journal.awaitDurable(putLike(filmId, userId, LocalDateTime.now()));
+        return findFilmById(filmId);
+    }
+
+    @Override
+    public Film removeLike(Long filmId, Long userId) {
+        checkFilmExistence(filmId);
+        userDao.checkUserExistence(userId);
+        journal.awaitDurable(deleteLike(filmId, userId));
+        return findFilmById(filmId);
+    }
 
+    @Override
+    public void saveLikes(List<Like> added, List<Like> removed) {
+        long ticket = 0;
+        for (Like like : added) {
+            ticket = Math.max(ticket, putLike(like.getFilmId(), like.getUserId(), like.getLikedAt()));
+        }
+        for (Like like : removed) {
+            ticket = Math.max(ticket, deleteLike(like.getFilmId(), like.getUserId()));
+        }
+        journal.awaitDurable(ticket);
+    }
+
+    // Likes of a film are journaled in the order they are applied. Returns the journal ticket, 0 for no change.
+    private long putLike(Long filmId, Long userId, LocalDateTime likedAt) {
+        Map<Long, LocalDateTime> filmLikes = likes.computeIfAbsent(filmId, id -> new ConcurrentHashMap<>());
+        synchronized (filmLikes) {
+            if (filmLikes.containsKey(userId)) {
+                return 0;
+            }
+            long ticket = journal.append(Mutation.addLike(filmId, userId, likedAt));
+            filmLikes.put(userId, likedAt);
+            return ticket;
+        }
+    }
+
+    private long deleteLike(Long filmId, Long userId) {
+        Map<Long, LocalDateTime> filmLikes = likes.get(filmId);
+        if (filmLikes == null) {
+            return 0;
+        }
+        synchronized (filmLikes) {
+            if (!filmLikes.containsKey(userId)) {
+                return 0;
+            }
+            long ticket = journal.append(Mutation.removeLike(filmId, userId));
+            filmLikes.remove(userId);
+            return ticket;
+        }
+    }
+
+    @Override
+    public void checkFilmExistence(Long id) {
+        if (!films.containsKey(id)) {
+            throw new FilmNotFoundException("Film with id \"" + id + "\" not found.");
+        }
+    }
+
+    @Override
+    public Map<Long, Integer> findLikeCounts() {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (Long id : films.keySet()) {
+            counts.put(id, countLikes(id));
+        }
+        return counts;
+    }
+
+    @Override
+    public List<Film> findTopByLikes(int limit) {
+        return findFilmsByIds(films.keySet().stream()
+                .sorted(Comparator.comparingInt((Long id) -> countLikes(id)).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(limit)
+                .collect(Collectors.toList()));
+    }
+
+    // Rate is the size of the film's like map, so there is nothing to drift.
+    @Override
+    public List<Long> repairLikeCounts() {
+        return List.of();
+    }
+
+    @Override
+    public void forEachFilm(Consumer<Film> consumer) {
+        for (Film film : films.values()) {
+            consumer.accept(copy(film));
+        }
+    }
+
+    // Likes film by film in film id order, not in the order they were made as the like table returns
+    // them: streamed straight from the maps, so the export and the snapshot need no copy of all likes.
+    @Override
+    public void forEachLike(Consumer<Like> consumer) {
+        for (Long filmId : films.keySet()) {
+            Map<Long, LocalDateTime> filmLikes = likes.get(filmId);
+            if (filmLikes != null) {
+                filmLikes.forEach((userId, likedAt) -> consumer.accept(new Like(filmId, userId, likedAt)));
+            }
+        }
+    }
+
+    private int countLikes(Long filmId) {
+        Map<Long, LocalDateTime> filmLikes = likes.get(filmId);
+        return filmLikes == null ? 0 : filmLikes.size();
+    }
+
+    // Resolves mpa and genres against the dictionaries, so unknown ids fail here as foreign keys do in the database.
+    // The other columns are checked as the films table defines them.
+    private Film normalize(Film film, long id) {
+        Columns.checkNotNull("NAME", film.getName());
+        Columns.checkNotNull("RELEASE_DATE", film.getReleaseDate());
+        Columns.checkLength("NAME", film.getName(), 100);
+        Columns.checkLength("DESCRIPTION", film.getDescription(), 200);
+        Film stored = Film.builder()
+                .id(id)
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .mpa(film.getMpa() == null ? null : dictionaryCache.findMpaById(film.getMpa().getId()))
+                .build();
+        film.getGenres().stream()
+                .map(Genre::getId)
+                .distinct()
+                .sorted()
+                .map(dictionaryCache::findGenreById)
+                .forEach(stored.getGenres()::add);
+        return stored;
+    }
+
+    private Film copy(Film stored) {
+        Film film = Film.builder()
+                .id(stored.getId())
+                .name(stored.getName())
+                .description(stored.getDescription())
+                .releaseDate(stored.getReleaseDate())
+                .duration(stored.getDuration())
+                .mpa(stored.getMpa())
+                .rate(countLikes(stored.getId()))
+                .build();
+        film.getGenres().addAll(stored.getGenres());
+        return film;
+    }
+
+}
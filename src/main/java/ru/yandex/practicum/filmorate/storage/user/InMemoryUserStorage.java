@@ -1,57 +1,350 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.UserDao;
 import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserPatch;
+import ru.yandex.practicum.filmorate.storage.Columns;
+import ru.yandex.practicum.filmorate.storage.Mutation;
+import ru.yandex.practicum.filmorate.storage.StorageJournal;
 
+import javax.annotation.PostConstruct;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+// UserDao kept in memory, used instead of the JDBC DAOs under the "memory" profile. Users are kept
+// in a concurrent map sorted by id, friend ids in a concurrent sorted set per user. Emails and logins
+// are unique as in the users table; writes that change them are serialized on the storage, reads
+// take no lock. Stored users are never handed out, every read returns a copy. Every change is
+// appended to the StorageJournal, which may keep it on disk across restarts, before it is applied;
+// see StorageJournal for what is served when the journal fails.
 @Component
+@Profile("memory")
 @Slf4j
-@FieldDefaults(level = AccessLevel.PRIVATE)
-public class InMemoryUserStorage implements UserStorage {
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class InMemoryUserStorage implements UserDao {
+    private static final Set<Mutation.Type> MUTATIONS =
+            EnumSet.of(Mutation.Type.PUT_USER, Mutation.Type.ADD_FRIEND, Mutation.Type.REMOVE_FRIEND);
 
-    final Map<Long, User> users = new HashMap<>();
+    StorageJournal journal;
 
-    Long userId = 0L;
+    ConcurrentNavigableMap<Long, User> users = new ConcurrentSkipListMap<>();
+    Map<String, Long> idsByEmail = new ConcurrentHashMap<>();
+    Map<String, Long> idsByLogin = new ConcurrentHashMap<>();
+    Map<Long, Set<Long>> friends = new ConcurrentHashMap<>();
+    AtomicLong userIdCounter = new AtomicLong();
 
-    Long generateUserId() {
-        return ++userId;
+    // Rebuilds users and friendships from the journal before the storage is handed to anyone.
+    @PostConstruct
+    public void recover() {
+        journal.recover(MUTATIONS, mutation -> {
+            switch (mutation.getType()) {
+                case PUT_USER:
+                    User user = mutation.getUser();
+                    User old = users.get(user.getId());
+                    if (old != null) {
+                        idsByEmail.remove(old.getEmail());
+                        idsByLogin.remove(old.getLogin());
+                    }
+                    store(user);
+                    userIdCounter.accumulateAndGet(user.getId(), Math::max);
+                    break;
+                case ADD_FRIEND:
+                    friends.computeIfAbsent(mutation.getUserId(), id -> new ConcurrentSkipListSet<>())
+                            .add(mutation.getFriendId());
+                    break;
+                case REMOVE_FRIEND:
+                    Set<Long> userFriends = friends.get(mutation.getUserId());
+                    if (userFriends != null) {
+                        userFriends.remove(mutation.getFriendId());
+                    }
+                    break;
+                default:
+            }
+        });
     }
 
     @Override
     public User create(User user) {
-        user.setId(generateUserId());
-        users.put(user.getId(), user);
-        log.info("New user created: " + user);
-        return user;
+        User stored;
+        long ticket;
+        synchronized (this) {
+            stored = copy(user, userIdCounter.incrementAndGet());
+            checkColumns(stored);
+            checkUnique(stored, null);
+            ticket = put(stored);
+        }
+        journal.awaitDurable(ticket);
+        log.info("New user created: " + stored);
+        return copy(stored, stored.getId());
+    }
+
+    // All users are checked before the first one is stored, so a batch is saved whole or not at all.
+    @Override
+    public void createAll(List<User> newUsers) {
+        long ticket = 0;
+        synchronized (this) {
+            List<User> stored = new ArrayList<>(newUsers.size());
+            Set<String> batchEmails = new HashSet<>();
+            Set<String> batchLogins = new HashSet<>();
+            for (User user : newUsers) {
+                User copy = copy(user, 0L);
+                checkColumns(copy);
+                checkUnique(copy, null);
+                if (!batchEmails.add(copy.getEmail()) || !batchLogins.add(copy.getLogin())) {
+                    throw new DuplicateKeyException("Duplicate email or login in batch: " + copy.getLogin());
+                }
+                stored.add(copy);
+            }
+            for (User user : stored) {
+                user.setId(userIdCounter.incrementAndGet());
+                ticket = put(user);
+            }
+        }
+        journal.awaitDurable(ticket);
     }
 
     @Override
     public User update(User user) {
-        users.replace(user.getId(), user);
-        log.info("User with ID=" + user.getId() + " updated:  " + user);
-        return user;
+        User stored = copy(user, user.getId());
+        checkColumns(stored);
+        long ticket;
+        synchronized (this) {
+            User old = users.get(user.getId());
+            if (old == null) {
+                throw new UserNotFoundException("User with id \"" + user.getId() + "\" not found.");
+            }
+            checkUnique(stored, old);
+            ticket = replace(old, stored);
+        }
+        journal.awaitDurable(ticket);
+        log.info("User with ID=" + stored.getId() + " updated:  " + stored);
+        return copy(stored, stored.getId());
+    }
+
+    @Override
+    public int patch(Long id, UserPatch patch) {
+        long ticket;
+        synchronized (this) {
+            User old = users.get(id);
+            if (old == null || patch.isEmpty()) {
+                return 0;
+            }
+            User stored = copy(old, id);
+            if (patch.getEmail() != null) {
+                stored.setEmail(patch.getEmail());
+            }
+            if (patch.getLogin() != null) {
+                stored.setLogin(patch.getLogin());
+            }
+            if (patch.getName() != null) {
+                stored.setName(patch.getName());
+            }
+            if (patch.getBirthday() != null) {
+                stored.setBirthday(patch.getBirthday());
+            }
+            checkColumns(stored);
+            checkUnique(stored, old);
+            ticket = replace(old, stored);
+        }
+        journal.awaitDurable(ticket);
+        return 1;
+    }
+
+    // As the users table defines them.
+    private static void checkColumns(User user) {
+        Columns.checkNotNull("EMAIL", user.getEmail());
+        Columns.checkNotNull("LOGIN", user.getLogin());
+        Columns.checkNotNull("NAME", user.getName());
+        Columns.checkLength("EMAIL", user.getEmail(), 254);
+        Columns.checkLength("LOGIN", user.getLogin(), 40);
+        Columns.checkLength("NAME", user.getName(), 40);
+    }
+
+    private void checkUnique(User user, User old) {
+        Long emailOwner = idsByEmail.get(user.getEmail());
+        Long loginOwner = idsByLogin.get(user.getLogin());
+        Long ownId = old == null ? null : old.getId();
+        if ((emailOwner != null && !emailOwner.equals(ownId)) || (loginOwner != null && !loginOwner.equals(ownId))) {
+            throw new DuplicateKeyException("User with email \"" + user.getEmail() + "\" or login \"" +
+                    user.getLogin() + "\" already exists.");
+        }
+    }
+
+    private long put(User user) {
+        long ticket = journal.append(Mutation.putUser(user));
+        store(user);
+        return ticket;
+    }
+
+    private void store(User user) {
+        idsByEmail.put(user.getEmail(), user.getId());
+        idsByLogin.put(user.getLogin(), user.getId());
+        users.put(user.getId(), user);
+    }
+
+    private long replace(User old, User user) {
+        long ticket = journal.append(Mutation.putUser(user));
+        idsByEmail.remove(old.getEmail());
+        idsByLogin.remove(old.getLogin());
+        store(user);
+        return ticket;
     }
 
     @Override
     public List<User> findAll() {
-        return new ArrayList<>(users.values());
+        return users.values().stream()
+                .map(user -> copy(user, user.getId()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return users.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(user -> copy(user, user.getId()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public User findUserById(Long id) {
+        User user = users.get(id);
+        if (user == null) {
+            throw new UserNotFoundException("User with id \"" + id + "\" not found.");
+        }
+        return copy(user, id);
     }
 
     @Override
-    public User findUserById(Long userId) {
-        if (!users.containsKey(userId)) {
-            throw new UserNotFoundException("User with id \"" + userId + "\" not found.");
+    public List<User> findUsersByIds(Collection<Long> ids) {
+        List<User> found = new ArrayList<>();
+        for (Long id : ids) {
+            User user = users.get(id);
+            if (user != null) {
+                found.add(copy(user, id));
+            }
         }
-        return users.get(userId);
+        return found;
     }
 
+    @Override
+    public void addFriend(Long userId, Long friendId) {
+        checkUserExistence(userId);
+        checkUserExistence(friendId);
+        journal.awaitDurable(addFriendship(userId, friendId));
+    }
+
+    // Unknown users fail the whole batch, as the foreign keys of the friendship table do.
+    @Override
+    public void addFriendships(List<Friendship> friendships) {
+        for (Friendship friendship : friendships) {
+            if (!users.containsKey(friendship.getUserId()) || !users.containsKey(friendship.getFriendId())) {
+                throw new DataIntegrityViolationException("Friendship of unknown users " +
+                        friendship.getUserId() + " and " + friendship.getFriendId() + ".");
+            }
+        }
+        long ticket = 0;
+        for (Friendship friendship : friendships) {
+            ticket = Math.max(ticket, addFriendship(friendship.getUserId(), friendship.getFriendId()));
+        }
+        journal.awaitDurable(ticket);
+    }
+
+    // Friends of a user are journaled in the order they are applied.
+    private long addFriendship(Long userId, Long friendId) {
+        Set<Long> userFriends = friends.computeIfAbsent(userId, id -> new ConcurrentSkipListSet<>());
+        synchronized (userFriends) {
+            if (userFriends.contains(friendId)) {
+                return 0;
+            }
+            long ticket = journal.append(Mutation.addFriend(userId, friendId));
+            userFriends.add(friendId);
+            return ticket;
+        }
+    }
+
+    @Override
+    public List<User> findFriends(Long userId) {
+        return findUsersByIds(friends.getOrDefault(userId, Set.of()));
+    }
+
+    @Override
+    public List<User> findCommonFriends(Long userId, Long otherUserId) {
+        Set<Long> otherFriends = friends.getOrDefault(otherUserId, Set.of());
+        return findUsersByIds(friends.getOrDefault(userId, Set.of()).stream()
+                .filter(otherFriends::contains)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public User removeFriend(Long userId, Long friendId) {
+        Set<Long> userFriends = friends.get(userId);
+        long ticket = 0;
+        if (userFriends != null) {
+            synchronized (userFriends) {
+                if (userFriends.contains(friendId)) {
+                    ticket = journal.append(Mutation.removeFriend(userId, friendId));
+                    userFriends.remove(friendId);
+                }
+            }
+        }
+        journal.awaitDurable(ticket);
+        return findUserById(userId);
+    }
+
+    @Override
+    public void checkUserExistence(Long id) {
+        if (!users.containsKey(id)) {
+            throw new UserNotFoundException("User with id \"" + id + "\" not found.");
+        }
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        for (User user : users.values()) {
+            consumer.accept(copy(user, user.getId()));
+        }
+    }
+
+    @Override
+    public void forEachFriendship(Consumer<Friendship> consumer) {
+        friends.forEach((userId, friendIds) -> {
+            for (Long friendId : friendIds) {
+                consumer.accept(new Friendship(userId, friendId));
+            }
+        });
+    }
+
+    private static User copy(User user, Long id) {
+        return User.builder()
+                .id(id)
+                .email(user.getEmail())
+                .login(user.getLogin())
+                .name(user.getName())
+                .birthday(user.getBirthday())
+                .build();
+    }
 
-}
\ No newline at end of file
+}
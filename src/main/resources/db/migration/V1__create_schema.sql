@@ -62,4 +62,7 @@ CREATE TABLE IF NOT EXISTS filmorate.films_genre_link
 
 ALTER TABLE filmorate.films_genre_link
 ADD UNIQUE (film_id, genre_id)
-;
\ No newline at end of file
+;
+
+CREATE INDEX IF NOT EXISTS likes_films_users_link_film_id_idx
+ON filmorate.likes_films_users_link (film_id);
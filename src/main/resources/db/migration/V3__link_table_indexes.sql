@@ -0,0 +1,32 @@
+-- Duplicates left by the old plain inserts would break the unique constraints below.
+DELETE FROM filmorate.likes_films_users_link AS l
+WHERE EXISTS (SELECT 1
+              FROM filmorate.likes_films_users_link AS d
+              WHERE d.film_id = l.film_id
+                AND d.user_id = l.user_id
+                AND d.id < l.id);
+
+DELETE FROM filmorate.friendship_user_to_user_link AS l
+WHERE EXISTS (SELECT 1
+              FROM filmorate.friendship_user_to_user_link AS d
+              WHERE d.user_id = l.user_id
+                AND d.friend_id = l.friend_id
+                AND d.id < l.id);
+
+-- Likes of a film: counts per film, like checks by (film_id, user_id).
+ALTER TABLE filmorate.likes_films_users_link
+ADD CONSTRAINT IF NOT EXISTS likes_films_users_link_film_user_uq UNIQUE (film_id, user_id);
+
+DROP INDEX IF EXISTS filmorate.likes_films_users_link_film_id_idx;
+
+-- Likes of a user.
+CREATE INDEX IF NOT EXISTS likes_films_users_link_user_film_idx
+ON filmorate.likes_films_users_link (user_id, film_id);
+
+-- Friends of a user, common friends.
+ALTER TABLE filmorate.friendship_user_to_user_link
+ADD CONSTRAINT IF NOT EXISTS friendship_user_to_user_link_user_friend_uq UNIQUE (user_id, friend_id);
+
+-- Users who have the given user as a friend.
+CREATE INDEX IF NOT EXISTS friendship_user_to_user_link_friend_user_idx
+ON filmorate.friendship_user_to_user_link (friend_id, user_id);
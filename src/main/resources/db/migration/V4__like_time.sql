@@ -0,0 +1,3 @@
+-- Time of each like, for the friends' activity feed. Likes made before this migration get its time.
+ALTER TABLE filmorate.likes_films_users_link
+ADD COLUMN IF NOT EXISTS liked_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL;
@@ -0,0 +1,12 @@
+-- films.rate is the number of likes of the film, kept by addLike/removeLike.
+-- Until now it held whatever the client sent, so it is recounted once here.
+UPDATE filmorate.films AS f
+SET rate = (SELECT COUNT(*) FROM filmorate.likes_films_users_link AS l WHERE l.film_id = f.film_id);
+
+ALTER TABLE filmorate.films ALTER COLUMN rate SET DEFAULT 0;
+
+ALTER TABLE filmorate.films ALTER COLUMN rate SET NOT NULL;
+
+-- Most liked films.
+CREATE INDEX IF NOT EXISTS films_rate_film_idx
+ON filmorate.films (rate DESC, film_id);
@@ -11,20 +11,36 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import ru.yandex.practicum.filmorate.exceptions.FilmNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
+import ru.yandex.practicum.filmorate.index.LikesMatrix;
+import ru.yandex.practicum.filmorate.index.PopularFilmsIndex;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPatch;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.ArrayList;
-
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -34,6 +50,12 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 class FilmDaoImplTest {
 
     private final FilmDaoImpl filmDao;
+    private final DictionaryCache dictionaryCache;
+    private final CachingFilmDao cachingFilmDao;
+    private final LikesMatrix likesMatrix;
+    private final PopularFilmsIndex popularFilmsIndex;
+    private final FilmService filmService;
+    private final JdbcTemplate jdbcTemplate;
     private final MockMvc mockMvc;
     static final ObjectMapper objectMapper =
             new ObjectMapper().disable(DeserializationFeature.ADJUST_DATES_TO_CONTEXT_TIME_ZONE);
@@ -437,6 +459,19 @@ class FilmDaoImplTest {
         assertEquals(likedFilm, filmDao.findFilmById(1L));
     }
 
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void repeatedLikeIsCountedOnce() throws Exception {
+        initFilmTerminatorOne();
+        initMockTerminatorOneOk();
+        initCreateUserUserOne();
+        initMockPerformUsersUserOneOk();
+
+        filmDao.addLike(1L, 1L);
+        assertEquals(1, filmDao.addLike(1L, 1L).getRate());
+        assertEquals(1, filmDao.findLikeCounts().get(1L));
+    }
+
     @Test
     @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
     void addLikeFailFilmIdIsNegative() throws Exception {
@@ -555,4 +590,568 @@ class FilmDaoImplTest {
             assertEquals(exception.getMessage(), "User with id \"-1\" not found.");
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void findPopularFilmsFollowsLikes() throws Exception {
+        initFilmTerminatorOne();
+        initMockTerminatorOneOk();
+        initMockTerminatorOneOk();
+        initCreateUserUserOne();
+        initMockPerformUsersUserOneOk();
+
+        mockMvc
+                .perform(put("/films/2/like/1"))
+                .andExpect(status().isOk());
+        mockMvc
+                .perform(get("/films/popular?count=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(2))
+                .andExpect(jsonPath("$[0].rate").value(1));
+
+        mockMvc
+                .perform(delete("/films/2/like/1"))
+                .andExpect(status().isOk());
+        mockMvc
+                .perform(get("/films/popular"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[1].id").value(2));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void findTopByLikesMatchesJavaSideSort() throws Exception {
+        initFilmTerminatorOne();
+        initMockTerminatorOneOk();
+        initMockTerminatorOneOk();
+        initMockTerminatorOneOk();
+        initMockTerminatorOneOk();
+        initCreateUserUserOne();
+        initMockPerformUsersUserOneOk();
+        userOne.setLogin("userTwo");
+        userOne.setEmail("second@usermail.ru");
+        initMockPerformUsersUserOneOk();
+
+        filmDao.addLike(3L, 1L);
+        filmDao.addLike(3L, 2L);
+        filmDao.addLike(2L, 1L);
+        filmDao.addLike(4L, 2L);
+
+        for (int limit = 0; limit <= 5; limit++) {
+            List<Film> expected = filmDao.findAll().stream()
+                    .sorted((film1, film2) -> film2.getRate() - film1.getRate())
+                    .limit(limit)
+                    .collect(Collectors.toList());
+            assertEquals(expected, filmDao.findTopByLikes(limit));
+        }
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void rateIsNotMultipliedByGenres() throws Exception {
+        initFilmTerminatorOne();
+        terminatorOne.getGenres().add(new Genre(4L, null));
+        terminatorOne.getGenres().add(new Genre(6L, null));
+        initMockTerminatorOneOk();
+        initCreateUserUserOne();
+        initMockPerformUsersUserOneOk();
+        userOne.setLogin("userTwo");
+        userOne.setEmail("second@usermail.ru");
+        initMockPerformUsersUserOneOk();
+
+        filmDao.addLike(1L, 1L);
+        filmDao.addLike(1L, 2L);
+
+        Film film = filmDao.findFilmById(1L);
+        assertEquals(2, film.getRate());
+        assertEquals(List.of(4L, 6L), film.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toList()));
+        assertEquals(film, filmDao.findAll().get(0));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void filmsShareDictionaryInstances() throws Exception {
+        initFilmTerminatorOne();
+        terminatorOne.getGenres().add(new Genre(1L, null));
+        initMockTerminatorOneOk();
+        initMockTerminatorOneOk();
+
+        List<Film> films = filmDao.findAll();
+        assertSame(dictionaryCache.findMpaById(4L), films.get(0).getMpa());
+        assertSame(films.get(0).getMpa(), films.get(1).getMpa());
+        assertSame(dictionaryCache.findGenreById(1L), films.get(0).getGenres().iterator().next());
+        assertSame(films.get(0).getGenres().iterator().next(), films.get(1).getGenres().iterator().next());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void filmCacheServesReadsAndIsInvalidatedByLikes() throws Exception {
+        initFilmTerminatorOne();
+        initMockTerminatorOneOk();
+        initCreateUserUserOne();
+        initMockPerformUsersUserOneOk();
+
+        long hits = cachingFilmDao.getStats().getHits();
+        mockMvc
+                .perform(get("/films/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(0));
+        assertEquals(hits + 1, cachingFilmDao.getStats().getHits());
+        // existence checks are not counted as lookups
+        long misses = cachingFilmDao.getStats().getMisses();
+        cachingFilmDao.checkFilmExistence(1L);
+        assertThrows(FilmNotFoundException.class, () -> cachingFilmDao.checkFilmExistence(9L));
+        assertEquals(hits + 1, cachingFilmDao.getStats().getHits());
+        assertEquals(misses, cachingFilmDao.getStats().getMisses());
+
+        mockMvc
+                .perform(put("/films/1/like/1"))
+                .andExpect(status().isOk());
+        mockMvc
+                .perform(get("/films/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(1));
+        mockMvc
+                .perform(get("/films/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size").value(1));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void findFilmsPageSeeksAfterId() throws Exception {
+        initFilmTerminatorOne();
+        initMockTerminatorOneOk();
+        initMockTerminatorOneOk();
+        initMockTerminatorOneOk();
+
+        mockMvc
+                .perform(get("/films?after=1&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(2));
+        mockMvc
+                .perform(get("/films?limit=5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3));
+        assertEquals(filmDao.findAll().subList(1, 3), filmDao.findPage(1L, 5));
+
+        // an unpaged list longer than max-unpaged is refused, not cut
+        ReflectionTestUtils.setField(filmService, "maxUnpaged", 3);
+        mockMvc.perform(get("/films")).andExpect(status().isOk()).andExpect(jsonPath("$.length()").value(3));
+        ReflectionTestUtils.setField(filmService, "maxUnpaged", 2);
+        mockMvc.perform(get("/films")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void exportFilmsAndLikesAsNdjson() throws Exception {
+        initFilmTerminatorOne();
+        terminatorOne.getGenres().add(new Genre(4L, null));
+        initMockTerminatorOneOk();
+        initMockTerminatorOneOk();
+        initCreateUserUserOne();
+        initMockPerformUsersUserOneOk();
+        filmDao.addLike(2L, 1L);
+
+        String films = mockMvc
+                .perform(get("/films/export?format=ndjson"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = films.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(asJsonString(filmDao.findFilmById(1L)), lines[0]);
+        assertEquals(asJsonString(filmDao.findFilmById(2L)), lines[1]);
+
+        mockMvc
+                .perform(get("/films/likes/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(startsWith("{\"filmId\":2,\"userId\":1,\"likedAt\":\"")));
+        mockMvc
+                .perform(get("/films/export?format=csv"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void findFilmsByIdsReportsMissingIds() throws Exception {
+        initFilmTerminatorOne();
+        initMockTerminatorOneOk();
+        initMockTerminatorOneOk();
+
+        mockMvc
+                .perform(get("/films?ids=2,99,1,2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.found.length()").value(2))
+                .andExpect(jsonPath("$.found[0].id").value(2))
+                .andExpect(jsonPath("$.found[1].id").value(1))
+                .andExpect(jsonPath("$.missingIds.length()").value(1))
+                .andExpect(jsonPath("$.missingIds[0]").value(99));
+        assertEquals(List.of(filmDao.findFilmById(1L)), filmDao.findFilmsByIds(List.of(1L, 5L)));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void filmUpdateReplacesGenresWithRequestedSet() throws Exception {
+        initFilmTerminatorOne();
+        terminatorOne.getGenres().add(new Genre(1L, null));
+        terminatorOne.getGenres().add(new Genre(2L, null));
+        initMockTerminatorOneOk();
+
+        Film update = filmDao.findFilmById(1L);
+        update.getGenres().clear();
+        update.getGenres().add(new Genre(3L, null));
+        update.getGenres().add(new Genre(2L, null));
+        update.getGenres().add(new Genre(3L, "duplicate"));
+        filmDao.update(update);
+
+        assertEquals(List.of(2L, 3L), filmDao.findFilmById(1L).getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toList()));
+
+        update.getGenres().clear();
+        filmDao.update(update);
+        assertTrue(filmDao.findFilmById(1L).getGenres().isEmpty());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void batchCreateReportsEveryItem() throws Exception {
+        initFilmTerminatorOne();
+        terminatorOne.getGenres().add(new Genre(2L, null));
+        Film invalid = Film.builder()
+                .name("")
+                .releaseDate(LocalDate.of(1984, Month.NOVEMBER, 26))
+                .duration(152)
+                .mpa(new Mpa(42L, null))
+                .build();
+        List<Film> films = List.of(terminatorOne, invalid, terminatorOne);
+
+        mockMvc
+                .perform(post("/films/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(films)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[1].id").doesNotExist())
+                .andExpect(jsonPath("$[1].violations.length()").value(3))
+                .andExpect(jsonPath("$[2].index").value(2))
+                .andExpect(jsonPath("$[2].id").value(2));
+
+        terminatorOne.setId(2L);
+        Film saved = filmDao.findFilmById(2L);
+        assertEquals(terminatorOne.getName(), saved.getName());
+        assertEquals(List.of(2L), saved.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void patchFilmWritesOnlyPassedFields() throws Exception {
+        initFilmTerminatorOne();
+        terminatorOne.getGenres().add(new Genre(1L, null));
+        filmDao.create(terminatorOne);
+        Film other = filmDao.create(terminatorOne);
+
+        assertEquals(1, filmDao.patch(1L, FilmPatch.builder().duration(100).build()));
+        assertEquals(0, filmDao.patch(1L, new FilmPatch()));
+
+        mockMvc
+                .perform(patch("/films/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Patched\",\"genres\":[{\"id\":2}]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Patched"))
+                .andExpect(jsonPath("$.duration").value(100))
+                .andExpect(jsonPath("$.description").value(terminatorOne.getDescription()))
+                .andExpect(jsonPath("$.genres[0].id").value(2));
+        assertEquals(other, filmDao.findFilmById(2L));
+
+        mockMvc
+                .perform(patch("/films/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"mpa\":{\"id\":42}}"))
+                .andExpect(status().isNotFound());
+        mockMvc
+                .perform(patch("/films/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"duration\":-1}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void recommendationsComeFromUsersWithOverlappingLikes() throws Exception {
+        initFilmTerminatorOne();
+        for (int i = 1; i <= 4; i++) {
+            initMockTerminatorOneOk();
+        }
+        for (int i = 1; i <= 3; i++) {
+            userOne = User.builder()
+                    .name("User " + i)
+                    .login("user" + i)
+                    .email("user" + i + "@usermail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, i))
+                    .build();
+            initMockPerformUsersUserOneOk();
+        }
+        long[][] likes = {{1, 1}, {1, 2}, {2, 1}, {2, 2}, {2, 3}, {3, 1}, {3, 4}};
+        for (long[] like : likes) {
+            mockMvc.perform(put("/films/" + like[1] + "/like/" + like[0])).andExpect(status().isOk());
+        }
+
+        mockMvc
+                .perform(get("/users/1/recommendations"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains(3, 4)));
+
+        mockMvc.perform(put("/films/3/like/1")).andExpect(status().isOk());
+        assertArrayEquals(new long[]{4}, likesMatrix.findRecommendations(1L, 10));
+
+        likesMatrix.refresh();
+        assertArrayEquals(new long[]{4}, likesMatrix.findRecommendations(1L, 10));
+        assertArrayEquals(new long[]{4}, likesMatrix.findRecommendations(2L, 10));
+        mockMvc
+                .perform(get("/users/9/recommendations"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void feedRanksFilmsLikedByFriends() throws Exception {
+        initFilmTerminatorOne();
+        for (int i = 1; i <= 3; i++) {
+            initMockTerminatorOneOk();
+        }
+        for (int i = 1; i <= 4; i++) {
+            userOne = User.builder()
+                    .name("User " + i)
+                    .login("user" + i)
+                    .email("user" + i + "@usermail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, i))
+                    .build();
+            initMockPerformUsersUserOneOk();
+        }
+        mockMvc.perform(put("/users/1/friends/2")).andExpect(status().isOk());
+        mockMvc.perform(put("/users/1/friends/3")).andExpect(status().isOk());
+        long[][] likes = {{2, 1}, {2, 2}, {3, 2}, {4, 3}};
+        for (long[] like : likes) {
+            mockMvc.perform(put("/films/" + like[1] + "/like/" + like[0])).andExpect(status().isOk());
+        }
+
+        mockMvc
+                .perform(get("/users/1/feed"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].film.id").value(contains(2, 1)))
+                .andExpect(jsonPath("$[0].friendIds").value(contains(2, 3)))
+                .andExpect(jsonPath("$[0].lastLikedAt").isNotEmpty());
+
+        mockMvc.perform(delete("/films/2/like/3")).andExpect(status().isOk());
+        mockMvc.perform(delete("/users/1/friends/2")).andExpect(status().isOk());
+        mockMvc
+                .perform(get("/users/1/feed"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc
+                .perform(get("/users/9/feed"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void likesBitmapsAnswerCountsMembershipAndCommonFilms() throws Exception {
+        initFilmTerminatorOne();
+        for (int i = 1; i <= 3; i++) {
+            initMockTerminatorOneOk();
+        }
+        for (int i = 1; i <= 2; i++) {
+            userOne = User.builder()
+                    .name("User " + i)
+                    .login("user" + i)
+                    .email("user" + i + "@usermail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, i))
+                    .build();
+            initMockPerformUsersUserOneOk();
+        }
+        long[][] likes = {{1, 1}, {1, 2}, {1, 3}, {2, 2}, {2, 3}};
+        for (long[] like : likes) {
+            mockMvc.perform(put("/films/" + like[1] + "/like/" + like[0])).andExpect(status().isOk());
+        }
+        mockMvc.perform(delete("/films/3/like/2")).andExpect(status().isOk());
+
+        mockMvc
+                .perform(get("/films/2/likes"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(2))
+                .andExpect(jsonPath("$.count").value(2))
+                .andExpect(jsonPath("$.containers").value(1))
+                .andExpect(jsonPath("$.sizeInBytes").isNumber());
+        mockMvc
+                .perform(get("/users/1/likes"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(3));
+        mockMvc
+                .perform(get("/films/3/like/1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("true"));
+        mockMvc
+                .perform(get("/films/3/like/2"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("false"));
+        mockMvc
+                .perform(get("/users/1/likes/common/2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains(2)));
+        mockMvc
+                .perform(get("/films/9/likes"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void similarFilmsFollowLikes() throws Exception {
+        initFilmTerminatorOne();
+        for (int i = 1; i <= 3; i++) {
+            initMockTerminatorOneOk();
+        }
+        for (int i = 1; i <= 3; i++) {
+            userOne = User.builder()
+                    .name("User " + i)
+                    .login("user" + i)
+                    .email("user" + i + "@usermail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, i))
+                    .build();
+            initMockPerformUsersUserOneOk();
+        }
+        long[][] likes = {{1, 1}, {1, 2}, {2, 1}, {2, 2}, {3, 3}};
+        for (long[] like : likes) {
+            mockMvc.perform(put("/films/" + like[1] + "/like/" + like[0])).andExpect(status().isOk());
+        }
+
+        mockMvc
+                .perform(get("/films/1/similar"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].film.id").value(2))
+                .andExpect(jsonPath("$[0].similarity").value(1.0));
+
+        mockMvc.perform(delete("/films/2/like/1")).andExpect(status().isOk());
+        mockMvc.perform(delete("/films/2/like/2")).andExpect(status().isOk());
+        mockMvc
+                .perform(get("/films/1/similar"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc
+                .perform(get("/films/9/similar"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void rateColumnFollowsLikesAndRepairFixesDrift() throws Exception {
+        initFilmTerminatorOne();
+        terminatorOne.setRate(5);
+        initMockTerminatorOneOk();
+        for (int i = 1; i <= 8; i++) {
+            userOne = User.builder()
+                    .name("User " + i)
+                    .login("user" + i)
+                    .email("user" + i + "@usermail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, i))
+                    .build();
+            initMockPerformUsersUserOneOk();
+        }
+        // rate sent by the client is ignored
+        assertEquals(0, filmDao.findFilmById(1L).getRate());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Film>> futures = new ArrayList<>();
+            for (long userId = 1; userId <= 8; userId++) {
+                long liker = userId;
+                futures.add(executor.submit(() -> filmDao.addLike(1L, liker)));
+                futures.add(executor.submit(() -> filmDao.addLike(1L, liker)));
+            }
+            for (Future<Film> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(8, filmDao.findFilmById(1L).getRate());
+        filmDao.removeLike(1L, 8L);
+        filmDao.removeLike(1L, 8L);
+        assertEquals(7, filmDao.findFilmById(1L).getRate());
+        assertEquals(7, filmDao.findLikeCounts().get(1L));
+
+        mockMvc
+                .perform(put("/films")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":1,\"name\":\"Terminator\",\"description\":\"Updated\"," +
+                                "\"releaseDate\":\"1984-11-26\",\"duration\":152,\"rate\":100," +
+                                "\"mpa\":{\"id\":4}}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(7));
+
+        jdbcTemplate.update("update filmorate.films set rate = 42 where film_id = 1");
+        assertEquals(1, filmService.repairLikeCounts());
+        assertEquals(0, filmService.repairLikeCounts());
+        mockMvc
+                .perform(get("/films/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(7));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void popularIndexFollowsConcurrentLikesAndRepairFixesIt() throws Exception {
+        initFilmTerminatorOne();
+        initMockTerminatorOneOk();
+        for (int i = 1; i <= 8; i++) {
+            userOne = User.builder()
+                    .name("User " + i)
+                    .login("user" + i)
+                    .email("user" + i + "@usermail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, i))
+                    .build();
+            initMockPerformUsersUserOneOk();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Film>> futures = new ArrayList<>();
+            for (long userId = 1; userId <= 8; userId++) {
+                long liker = userId;
+                futures.add(executor.submit(() -> filmService.addLike(1L, liker)));
+                if (liker % 2 == 0) {
+                    futures.add(executor.submit(() -> filmService.removeLike(1L, liker)));
+                }
+            }
+            for (Future<Film> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        int rate = filmDao.findFilmById(1L).getRate();
+        assertEquals(rate, popularFilmsIndex.findRate(1L));
+        mockMvc
+                .perform(get("/films/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(rate));
+
+        popularFilmsIndex.update(1L, rate + 10);
+        popularFilmsIndex.update(99L, rate + 20);
+        assertEquals(0, filmService.repairLikeCounts());
+        assertEquals(rate, popularFilmsIndex.findRate(1L));
+        assertNull(popularFilmsIndex.findRate(99L));
+        assertEquals(List.of(1L), popularFilmsIndex.findTop(10));
+    }
+}
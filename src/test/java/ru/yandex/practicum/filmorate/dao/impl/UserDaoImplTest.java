@@ -11,20 +11,34 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.exceptions.UserNotFoundException;
+import ru.yandex.practicum.filmorate.index.FriendGraph;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserPatch;
+import ru.yandex.practicum.filmorate.service.UserService;
 
 
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
+import static org.hamcrest.Matchers.contains;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -33,6 +47,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 class UserDaoImplTest {
     private final UserDaoImpl userDao;
+    private final FriendGraph friendGraph;
+    private final UserService userService;
+    private final JdbcTemplate jdbcTemplate;
     private final MockMvc mockMvc;
     static final ObjectMapper objectMapper =
             new ObjectMapper().disable(DeserializationFeature.ADJUST_DATES_TO_CONTEXT_TIME_ZONE);
@@ -235,6 +252,59 @@ class UserDaoImplTest {
         assertEquals(userOne, testUser);
     }
 
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void updateUserChangesOnlyTargetRow() {
+        initCreateUserUserOne();
+        initCreateUserUserTwo();
+        userDao.create(userOne);
+        User storedTwo = userDao.create(userTwo);
+
+        userOne.setId(1L);
+        userOne.setName("First Updated");
+        userDao.update(userOne);
+
+        assertEquals(userOne, userDao.findUserById(1L));
+        assertEquals(storedTwo, userDao.findUserById(2L));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "select COUNT(*) from filmorate.users where name = 'First Updated'", Integer.class));
+
+        userOne.setId(9L);
+        assertThrows(UserNotFoundException.class, () -> userDao.update(userOne));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void patchUserWritesOnlyPassedFields() throws Exception {
+        initCreateUserUserOne();
+        initCreateUserUserTwo();
+        userDao.create(userOne);
+        User storedTwo = userDao.create(userTwo);
+
+        assertEquals(1, userDao.patch(1L, UserPatch.builder().name("Patched").build()));
+
+        mockMvc
+                .perform(patch("/users/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"login\":\"patchedOne\",\"name\":\" \"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.login").value("patchedOne"))
+                .andExpect(jsonPath("$.name").value("patchedOne"))
+                .andExpect(jsonPath("$.email").value(userOne.getEmail()));
+        assertEquals(storedTwo, userDao.findUserById(2L));
+
+        mockMvc
+                .perform(patch("/users/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"login\":\"with space\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc
+                .perform(patch("/users/9")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Nobody\"}"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
     public void failUpdateUser() throws Exception {
@@ -382,4 +452,259 @@ class UserDaoImplTest {
         assertEquals(checkList, userDao.findCommonFriends(1L, 2L));
     }
 
-}
\ No newline at end of file
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void findUsersPageSeeksAfterId() throws Exception {
+        initCreateUserUserOne();
+        initCreateUserUserTwo();
+        initCreateUserUserThree();
+        initMockPerformUsersUserOneOk();
+        initMockPerformUsersUserTwoOk();
+        initMockPerformUsersUserThreeOk();
+
+        assertEquals(List.of(2L, 3L), userDao.findPage(1L, 10).stream()
+                .map(User::getId)
+                .collect(Collectors.toList()));
+        mockMvc
+                .perform(get("/users?after=1&limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(2));
+        mockMvc
+                .perform(get("/users?after=3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+        mockMvc
+                .perform(get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3));
+        mockMvc
+                .perform(get("/users?limit=0"))
+                .andExpect(status().isBadRequest());
+
+        // an unpaged list longer than max-unpaged is refused, not cut
+        ReflectionTestUtils.setField(userService, "maxUnpaged", 2);
+        mockMvc.perform(get("/users")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void exportUsersAndFriendshipsAsNdjson() throws Exception {
+        initCreateUserUserOne();
+        initCreateUserUserTwo();
+        initMockPerformUsersUserOneOk();
+        initMockPerformUsersUserTwoOk();
+        userDao.addFriend(1L, 2L);
+
+        String users = mockMvc
+                .perform(get("/users/export"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = users.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(userDao.findUserById(2L), objectMapper.readValue(lines[1], User.class));
+
+        mockMvc
+                .perform(get("/users/friends/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"userId\":1,\"friendId\":2}\n"));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void findUsersByIdsReportsMissingIds() throws Exception {
+        initCreateUserUserOne();
+        initCreateUserUserTwo();
+        initMockPerformUsersUserOneOk();
+        initMockPerformUsersUserTwoOk();
+
+        mockMvc
+                .perform(get("/users?ids=3,2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.found.length()").value(1))
+                .andExpect(jsonPath("$.found[0].id").value(2))
+                .andExpect(jsonPath("$.missingIds[0]").value(3));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void importUsersAndFriendshipsSkipsInvalidLines() throws Exception {
+        initCreateUserUserOne();
+        initCreateUserUserTwo();
+        initCreateUserUserThree();
+        initMockPerformUsersUserOneOk();
+        userThree.setName("");
+        String users = asJsonString(userTwo) + "\n" +
+                asJsonString(userOne) + "\n" +
+                "{not json\n" +
+                "\n" +
+                asJsonString(userThree) + "\n";
+
+        mockMvc
+                .perform(post("/users/import")
+                        .contentType("application/x-ndjson")
+                        .content(users))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.read").value(4))
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.skipped").value(2))
+                .andExpect(jsonPath("$.errors.length()").value(2));
+        assertEquals(3, userDao.findAll().size());
+        assertEquals("userThree", userDao.findUserById(3L).getName());
+
+        String edges = "userOne userTwo\n" +
+                "userOne,userThree\n" +
+                "userOne userTwo\n" +
+                "userOne nobody\n";
+        mockMvc
+                .perform(post("/users/friends/import")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content(edges))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.skipped").value(2));
+        assertEquals(List.of(2L, 3L), userDao.findFriends(1L).stream()
+                .map(User::getId)
+                .sorted()
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void repeatedAddFriendIsStoredOnce() throws Exception {
+        initCreateUserUserOne();
+        initCreateUserUserTwo();
+        initMockPerformUsersUserOneOk();
+        initMockPerformUsersUserTwoOk();
+
+        userDao.addFriend(1L, 2L);
+        userDao.addFriend(1L, 2L);
+
+        assertEquals(1, userDao.findFriends(1L).size());
+        assertEquals(1, userDao.findCommonFriends(1L, 1L).size());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void friendGraphAnswersLikeLinkTable() throws Exception {
+        initCreateUserUserOne();
+        initCreateUserUserTwo();
+        initCreateUserUserThree();
+        initMockPerformUsersUserOneOk();
+        initMockPerformUsersUserTwoOk();
+        initMockPerformUsersUserThreeOk();
+
+        mockMvc.perform(put("/users/1/friends/3")).andExpect(status().isOk());
+        mockMvc.perform(put("/users/1/friends/2")).andExpect(status().isOk());
+        mockMvc.perform(put("/users/2/friends/3")).andExpect(status().isOk());
+        mockMvc.perform(put("/users/2/friends/1")).andExpect(status().isOk());
+        mockMvc.perform(delete("/users/2/friends/1")).andExpect(status().isOk());
+
+        assertArrayEquals(new long[]{2L, 3L}, friendGraph.findFriends(1L));
+        assertArrayEquals(new long[]{3L}, friendGraph.findCommonFriends(1L, 2L));
+        mockMvc
+                .perform(get("/users/1/friends/common/2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(3));
+
+        userDao.addFriend(3L, 1L);
+        friendGraph.rebuild();
+        for (long userId = 1; userId <= 3; userId++) {
+            assertArrayEquals(userDao.findFriends(userId).stream().mapToLong(User::getId).sorted().toArray(),
+                    friendGraph.findFriends(userId));
+        }
+        assertArrayEquals(new long[0], friendGraph.findCommonFriends(2L, 3L));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void friendGraphFollowsConcurrentAddAndRemoveOfAPair() throws Exception {
+        initCreateUserUserOne();
+        initCreateUserUserTwo();
+        initMockPerformUsersUserOneOk();
+        initMockPerformUsersUserTwoOk();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 50; round++) {
+                List<Future<?>> requests = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    boolean add = i % 2 == 0;
+                    requests.add(executor.submit(() -> {
+                        mockMvc.perform(add ? put("/users/1/friends/2") : delete("/users/1/friends/2"))
+                                .andExpect(status().isOk());
+                        return null;
+                    }));
+                }
+                for (Future<?> request : requests) {
+                    request.get();
+                }
+                assertArrayEquals(userDao.findFriends(1L).stream().mapToLong(User::getId).toArray(),
+                        friendGraph.findFriends(1L));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void friendSuggestionsRankedByMutualFriends() throws Exception {
+        for (int i = 1; i <= 5; i++) {
+            userDao.create(User.builder()
+                    .name("User " + i)
+                    .login("user" + i)
+                    .email("user" + i + "@usermail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, i))
+                    .build());
+        }
+        long[][] friendships = {{1, 2}, {1, 3}, {2, 1}, {2, 4}, {3, 2}, {3, 4}, {3, 5}};
+        for (long[] friendship : friendships) {
+            mockMvc.perform(put("/users/" + friendship[0] + "/friends/" + friendship[1])).andExpect(status().isOk());
+        }
+
+        mockMvc
+                .perform(get("/users/1/friends/suggestions"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].user.id").value(4))
+                .andExpect(jsonPath("$[0].mutualFriends").value(2))
+                .andExpect(jsonPath("$[1].user.id").value(5))
+                .andExpect(jsonPath("$[1].mutualFriends").value(1));
+        mockMvc
+                .perform(get("/users/1/friends/suggestions?count=1"))
+                .andExpect(jsonPath("$.length()").value(1));
+        assertEquals(Map.of(4L, 2), friendGraph.findSuggestions(1L, 10, 2));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    public void findPathReturnsShortestFriendChain() throws Exception {
+        for (int i = 1; i <= 4; i++) {
+            userDao.create(User.builder()
+                    .name("User " + i)
+                    .login("user" + i)
+                    .email("user" + i + "@usermail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, i))
+                    .build());
+        }
+        long[][] friendships = {{1, 2}, {2, 3}, {3, 4}, {2, 4}};
+        for (long[] friendship : friendships) {
+            mockMvc.perform(put("/users/" + friendship[0] + "/friends/" + friendship[1])).andExpect(status().isOk());
+        }
+
+        mockMvc
+                .perform(get("/users/1/path/4"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users[*].id").value(contains(1, 2, 4)))
+                .andExpect(jsonPath("$.budgetExceeded").value(false));
+        mockMvc
+                .perform(get("/users/1/path/4?maxDepth=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users.length()").value(0));
+        mockMvc
+                .perform(get("/users/1/path/9"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+import ru.yandex.practicum.filmorate.model.Like;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class FriendFeedTest {
+
+    private static final int USERS = 300;
+    private static final int FILMS = 200;
+
+    @Test
+    void inboxesGiveTheSameFeedAsMergeOnRead() {
+        FriendGraph graph = new FriendGraph(null);
+        // no reader has more than Integer.MAX_VALUE friends, every reader has more than -1
+        FriendFeed pull = new FriendFeed(null, graph, 10_000, 100_000, Integer.MAX_VALUE, 24);
+        FriendFeed push = new FriendFeed(null, graph, 10_000, 100_000, -1, 24);
+        Random random = new Random(7);
+        for (int i = 0; i < 3_000; i++) {
+            addFriend(graph, pull, push, 1 + random.nextInt(USERS), 1 + random.nextInt(USERS));
+        }
+
+        long time = 1_000_000;
+        for (int step = 0; step < 20_000; step++) {
+            long userId = 1 + random.nextInt(USERS);
+            int action = random.nextInt(100);
+            if (action < 60) {
+                long filmId = 1 + random.nextInt(FILMS);
+                pull.addLike(userId, filmId, ++time);
+                push.addLike(userId, filmId, time);
+            } else if (action < 70) {
+                long filmId = 1 + random.nextInt(FILMS);
+                pull.removeLike(userId, filmId);
+                push.removeLike(userId, filmId);
+            } else if (action < 72) {
+                addFriend(graph, pull, push, userId, 1 + random.nextInt(USERS));
+            } else {
+                assertSameFeed(pull.findFeed(userId, 20, time), push.findFeed(userId, 20, time));
+            }
+        }
+        assertTrue(push.hasInbox(1) || push.hasInbox(2) || push.hasInbox(3));
+        assertFalse(pull.hasInbox(1));
+    }
+
+    @Test
+    void newestLikesRankFirstAmongEqualCounts() {
+        FriendGraph graph = new FriendGraph(null);
+        FriendFeed feed = new FriendFeed(null, graph, 100, 1_000, 100, 1);
+        graph.addFriend(1, 2);
+        graph.addFriend(1, 3);
+        long hour = 3_600_000;
+        feed.addLike(2, 10, 0);
+        feed.addLike(3, 10, 0);
+        feed.addLike(2, 20, 5 * hour);
+        feed.addLike(3, 30, 4 * hour);
+
+        List<FriendFeed.Item> items = feed.findFeed(1, 10, 5 * hour);
+        assertEquals(3, items.size());
+        // one fresh like outweighs two likes five half-lives old
+        assertEquals(20, items.get(0).getFilmId());
+        assertEquals(30, items.get(1).getFilmId());
+        assertEquals(10, items.get(2).getFilmId());
+        assertArrayEquals(new long[]{2, 3}, items.get(2).getUserIds());
+        assertEquals(2, feed.findFeed(1, 2, 5 * hour).size());
+    }
+
+    @Test
+    void rebuiltTimelinesKeepTheNewestLikesByTime() {
+        long hour = 3_600_000;
+        long[] films = {5, 1, 4, 2, 3, 6};
+        FilmDao filmDao = mock(FilmDao.class);
+        // stored likes come in no time order
+        doAnswer(invocation -> {
+            Consumer<Like> consumer = invocation.getArgument(0);
+            for (long filmId : films) {
+                consumer.accept(new Like(filmId, 2L, LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(filmId * hour), ZoneId.systemDefault())));
+            }
+            return null;
+        }).when(filmDao).forEachLike(any());
+
+        FriendGraph graph = new FriendGraph(null);
+        graph.addFriend(1, 2);
+        FriendFeed rebuilt = new FriendFeed(filmDao, graph, 3, 1_000, 100, 1);
+        rebuilt.rebuild();
+        FriendFeed live = new FriendFeed(null, graph, 3, 1_000, 100, 1);
+        for (long filmId = 1; filmId <= 6; filmId++) {
+            live.addLike(2, filmId, filmId * hour);
+        }
+
+        List<FriendFeed.Item> items = rebuilt.findFeed(1, 10, 6 * hour);
+        assertSameFeed(live.findFeed(1, 10, 6 * hour), items);
+        assertEquals(List.of(6L, 5L, 4L), List.of(items.get(0).getFilmId(), items.get(1).getFilmId(),
+                items.get(2).getFilmId()));
+    }
+
+    private static void addFriend(FriendGraph graph, FriendFeed pull, FriendFeed push, long userId, long friendId) {
+        if (userId == friendId) {
+            return;
+        }
+        graph.addFriend(userId, friendId);
+        pull.friendsChanged(userId);
+        push.friendsChanged(userId);
+    }
+
+    private static void assertSameFeed(List<FriendFeed.Item> expected, List<FriendFeed.Item> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getFilmId(), actual.get(i).getFilmId());
+            assertArrayEquals(expected.get(i).getUserIds(), actual.get(i).getUserIds());
+            assertEquals(expected.get(i).getLastLikedAt(), actual.get(i).getLastLikedAt());
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FriendGraphTest {
+
+    private static final int USERS = 2_000;
+    private static final int FRIENDSHIPS = 6_000;
+
+    @Test
+    void bidirectionalSearchFindsShortestPaths() {
+        FriendGraph graph = new FriendGraph(null);
+        Random random = new Random(42);
+        for (int i = 0; i < FRIENDSHIPS; i++) {
+            long userId = 1 + random.nextInt(USERS);
+            long friendId = 1 + random.nextInt(USERS);
+            if (userId != friendId) {
+                graph.addFriend(userId, friendId);
+            }
+        }
+
+        for (int i = 0; i < 200; i++) {
+            long from = 1 + random.nextInt(USERS);
+            long to = 1 + random.nextInt(USERS);
+            int expected = distance(graph, from, to);
+            long[] path = graph.findPath(from, to, 20, Integer.MAX_VALUE, 10_000).getUserIds();
+
+            if (expected < 0) {
+                assertEquals(0, path.length);
+                continue;
+            }
+            assertEquals(expected + 1, path.length);
+            assertEquals(from, path[0]);
+            assertEquals(to, path[path.length - 1]);
+            for (int j = 1; j < path.length; j++) {
+                assertTrue(contains(graph.findFriends(path[j - 1]), path[j]));
+            }
+        }
+    }
+
+    @Test
+    void suggestionFanOutIsSampledOverAllFriendIds() {
+        FriendGraph graph = new FriendGraph(null);
+        for (long friend = 2; friend <= 101; friend++) {
+            graph.addFriend(1, friend);
+            // only the friends with the higher ids know user 500
+            if (friend > 51) {
+                graph.addFriend(friend, 500);
+            }
+        }
+
+        assertEquals(Map.of(500L, 5), graph.findSuggestions(1, 10, 10));
+        assertEquals(Map.of(500L, 50), graph.findSuggestions(1, 10, 1_000));
+    }
+
+    @Test
+    void searchStopsAtDepthAndNodeBudget() {
+        FriendGraph graph = new FriendGraph(null);
+        for (long userId = 1; userId < 10; userId++) {
+            graph.addFriend(userId, userId + 1);
+        }
+
+        assertArrayEquals(new long[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10},
+                graph.findPath(1, 10, 9, 100, 1000).getUserIds());
+        FriendGraph.PathResult tooDeep = graph.findPath(1, 10, 8, 100, 1000);
+        assertEquals(0, tooDeep.getUserIds().length);
+        assertFalse(tooDeep.isBudgetExceeded());
+        assertEquals(0, graph.findPath(10, 1, 9, 100, 1000).getUserIds().length);
+        assertTrue(graph.findPath(1, 10, 9, 4, 1000).isBudgetExceeded());
+    }
+
+    private static int distance(FriendGraph graph, long from, long to) {
+        Map<Long, Integer> distances = new HashMap<>();
+        Deque<Long> queue = new ArrayDeque<>();
+        distances.put(from, 0);
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            long user = queue.poll();
+            if (user == to) {
+                return distances.get(user);
+            }
+            for (long friend : graph.findFriends(user)) {
+                if (distances.putIfAbsent(friend, distances.get(user) + 1) == null) {
+                    queue.add(friend);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean contains(long[] ids, long id) {
+        for (long value : ids) {
+            if (value == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
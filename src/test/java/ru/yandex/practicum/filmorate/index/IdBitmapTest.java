@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdBitmapTest {
+
+    @Test
+    void behavesLikeSortedSetAcrossContainerKinds() {
+        Random random = new Random(3);
+        IdBitmap bitmap = IdBitmap.EMPTY;
+        IdBitmap other = IdBitmap.EMPTY;
+        TreeSet<Long> expected = new TreeSet<>();
+        TreeSet<Long> expectedOther = new TreeSet<>();
+        // dense ids in the first two containers push them over the array limit and back
+        for (int step = 0; step < 60_000; step++) {
+            long id = step % 5 == 0 ? random.nextInt(Integer.MAX_VALUE) : random.nextInt(1 << 17);
+            if (step < 40_000 || random.nextBoolean()) {
+                bitmap = bitmap.with(id);
+                expected.add(id);
+            } else {
+                bitmap = bitmap.without(id);
+                expected.remove(id);
+            }
+            if (random.nextInt(3) == 0) {
+                other = other.with(id);
+                expectedOther.add(id);
+            }
+        }
+
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), bitmap.toArray());
+        for (int i = 0; i < 10_000; i++) {
+            long id = random.nextInt(1 << 17);
+            assertEquals(expected.contains(id), bitmap.contains(id));
+        }
+        expectedOther.retainAll(expected);
+        assertArrayEquals(expectedOther.stream().mapToLong(Long::longValue).toArray(), bitmap.and(other));
+        assertArrayEquals(bitmap.toArray(), IdBitmap.of(bitmap.toArray()).toArray());
+
+        IdBitmap emptied = bitmap;
+        for (long id : bitmap.toArray()) {
+            emptied = emptied.without(id);
+        }
+        assertEquals(0, emptied.cardinality());
+        assertEquals(0, emptied.containerCount());
+        assertEquals(expected.size(), bitmap.cardinality());
+    }
+
+    @Test
+    void denseContainersTakeLessMemoryThanArrays() {
+        long[] dense = new long[60_000];
+        for (int i = 0; i < dense.length; i++) {
+            dense[i] = i;
+        }
+        IdBitmap bitmap = IdBitmap.of(dense);
+        assertEquals(1, bitmap.containerCount());
+        assertTrue(bitmap.sizeInBytes() < 8L * dense.length / 50);
+    }
+
+}
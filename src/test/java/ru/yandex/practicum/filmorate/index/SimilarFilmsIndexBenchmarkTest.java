@@ -0,0 +1,139 @@
+package ru.yandex.practicum.filmorate.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class SimilarFilmsIndexBenchmarkTest {
+
+    private static final int CLUSTERS = 300;
+    private static final int FILMS_PER_CLUSTER = 10;
+    private static final int POOL_SIZE = 40;
+    private static final int USERS = 50_000;
+    private static final int NOISE_LIKES = 5;
+    private static final int TOP = FILMS_PER_CLUSTER - 1;
+    private static final int QUERIES = 500;
+
+    private final Random random = new Random(7);
+    private final int films = CLUSTERS * FILMS_PER_CLUSTER;
+    private final long[][] likers = new long[films + 1][];
+    private final SimilarFilmsIndex index = new SimilarFilmsIndex(null, 32, 3);
+
+    private void generateLikes() {
+        // films of a cluster are liked by most of the cluster's user pool plus a few random users
+        for (int cluster = 0; cluster < CLUSTERS; cluster++) {
+            long[] pool = random.longs(POOL_SIZE, 1, USERS).toArray();
+            for (int i = 0; i < FILMS_PER_CLUSTER; i++) {
+                long filmId = (long) cluster * FILMS_PER_CLUSTER + i + 1;
+                Set<Long> users = new HashSet<>();
+                for (long userId : pool) {
+                    if (random.nextDouble() < 0.8) {
+                        users.add(userId);
+                    }
+                }
+                for (int j = 0; j < NOISE_LIKES; j++) {
+                    users.add(1 + (long) random.nextInt(USERS));
+                }
+                likers[(int) filmId] = users.stream().mapToLong(Long::longValue).sorted().toArray();
+                for (long userId : likers[(int) filmId]) {
+                    index.addLike(filmId, userId);
+                }
+            }
+        }
+    }
+
+    @Test
+    void minHashMatchesExactJaccard() {
+        generateLikes();
+        long[] queries = random.longs(QUERIES, 1, films + 1).toArray();
+        int found = 0;
+        double error = 0;
+        int estimated = 0;
+        for (long query : queries) {
+            Map<Long, Double> minHash = index.findSimilar(query, TOP);
+            for (long filmId : exactTop(likers, query)) {
+                if (minHash.containsKey(filmId)) {
+                    found++;
+                }
+            }
+            for (Map.Entry<Long, Double> entry : minHash.entrySet()) {
+                error += Math.abs(entry.getValue() - jaccard(likers[(int) query], likers[entry.getKey().intValue()]));
+                estimated++;
+            }
+        }
+        double recall = (double) found / (QUERIES * TOP);
+        double meanError = error / estimated;
+
+        log.info(String.format("Similar films over %d films: recall@%d %.3f, mean similarity error %.3f",
+                films, TOP, recall, meanError));
+        assertTrue(recall > 0.9);
+        assertTrue(meanError < 0.1);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void minHashIsFasterThanExactJaccard() {
+        generateLikes();
+        long[] queries = random.longs(QUERIES, 1, films + 1).toArray();
+        long exactNanos = System.nanoTime();
+        for (long filmId : queries) {
+            exactTop(likers, filmId);
+        }
+        exactNanos = System.nanoTime() - exactNanos;
+
+        long minHashNanos = System.nanoTime();
+        for (long filmId : queries) {
+            index.findSimilar(filmId, TOP);
+        }
+        minHashNanos = System.nanoTime() - minHashNanos;
+
+        log.info(String.format("Similar films over %d films: exact Jaccard %.1f us/query, MinHash+LSH %.1f us/query",
+                films, exactNanos / 1000.0 / QUERIES, minHashNanos / 1000.0 / QUERIES));
+        assertTrue(minHashNanos < exactNanos);
+    }
+
+    private static long[] exactTop(long[][] likers, long filmId) {
+        long[] ranked = new long[likers.length - 1];
+        int size = 0;
+        for (int other = 1; other < likers.length; other++) {
+            if (other != filmId) {
+                double similarity = jaccard(likers[(int) filmId], likers[other]);
+                ranked[size++] = SortedLongArrays.rankKey(Math.round(similarity * 1_000_000), other);
+            }
+        }
+        Arrays.sort(ranked, 0, size);
+        long[] top = new long[TOP];
+        for (int i = 0; i < TOP; i++) {
+            top[i] = SortedLongArrays.rankedId(ranked[size - 1 - i]);
+        }
+        return top;
+    }
+
+    private static double jaccard(long[] first, long[] second) {
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        return (double) common / (first.length + second.length - common);
+    }
+
+}
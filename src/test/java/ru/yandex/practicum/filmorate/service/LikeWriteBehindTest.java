@@ -0,0 +1,207 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.dao.impl.CachingFilmDao;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.batch-size=4",
+        "filmorate.likes.write-behind.flush-ms=60000"
+})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class LikeWriteBehindTest {
+
+    private final LikeWriteBehind likeWriteBehind;
+    private final JdbcTemplate jdbcTemplate;
+    private final MockMvc mockMvc;
+    @SpyBean
+    private CachingFilmDao filmDao;
+
+    private int storedLikes() {
+        return jdbcTemplate.queryForObject("select COUNT(*) from filmorate.likes_films_users_link", Integer.class);
+    }
+
+    private int storedRate(long filmId) {
+        return jdbcTemplate.queryForObject("select rate from filmorate.films where film_id = ?", Integer.class, filmId);
+    }
+
+    private void createUsersAndFilms(int users, int films) throws Exception {
+        for (int i = 1; i <= users; i++) {
+            mockMvc.perform(post("/users")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"login\":\"user" + i + "\",\"email\":\"user" + i + "@usermail.ru\"," +
+                                    "\"birthday\":\"1990-01-01\"}"))
+                    .andExpect(status().isOk());
+        }
+        for (int i = 1; i <= films; i++) {
+            mockMvc.perform(post("/films")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\":\"Film " + i + "\",\"description\":\"Description\"," +
+                                    "\"releaseDate\":\"1984-11-26\",\"duration\":100,\"mpa\":{\"id\":1}}"))
+                    .andExpect(status().isOk());
+        }
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void likesAreQueuedCoalescedAndWrittenInBatches() throws Exception {
+        createUsersAndFilms(3, 2);
+
+        // the liking user sees the like before it is written
+        mockMvc.perform(put("/films/1/like/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(1));
+        mockMvc.perform(get("/films/1")).andExpect(jsonPath("$.rate").value(1));
+        mockMvc.perform(get("/films/1/like/1")).andExpect(content().string("true"));
+        mockMvc.perform(get("/films/popular?count=1")).andExpect(jsonPath("$[0].id").value(1));
+        assertEquals(0, storedLikes());
+
+        mockMvc.perform(put("/films/1/like/2")).andExpect(jsonPath("$.rate").value(2));
+        mockMvc.perform(delete("/films/1/like/2")).andExpect(jsonPath("$.rate").value(1));
+        mockMvc.perform(put("/films/1/like/1")).andExpect(jsonPath("$.rate").value(1));
+        mockMvc.perform(put("/films/2/like/3")).andExpect(status().isOk());
+        mockMvc.perform(put("/films/9/like/1")).andExpect(status().isNotFound());
+        mockMvc.perform(put("/films/1/like/9")).andExpect(status().isNotFound());
+        mockMvc.perform(put("/films/1/like/4294967297")).andExpect(status().isNotFound());
+        mockMvc.perform(delete("/films/4294967297/like/1")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/films/likes/queue/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.queued").value(3))
+                .andExpect(jsonPath("$.pending").value(2))
+                .andExpect(jsonPath("$.coalesced").value(1))
+                .andExpect(jsonPath("$.flushes").value(0));
+        assertEquals(0, storedLikes());
+
+        // the fourth queued change fills a batch
+        mockMvc.perform(put("/films/1/like/3")).andExpect(jsonPath("$.rate").value(2));
+        for (int i = 0; i < 100 && storedLikes() < 3; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(3, storedLikes());
+        assertEquals(2, storedRate(1));
+        assertEquals(1, storedRate(2));
+        mockMvc.perform(get("/films/1")).andExpect(jsonPath("$.rate").value(2));
+
+        // shutdown writes what is still queued
+        mockMvc.perform(delete("/films/1/like/1")).andExpect(jsonPath("$.rate").value(1));
+        assertEquals(3, storedLikes());
+        likeWriteBehind.close();
+        assertEquals(2, storedLikes());
+        assertEquals(1, storedRate(1));
+        mockMvc.perform(get("/films/likes/queue/stats"))
+                .andExpect(jsonPath("$.queued").value(0))
+                .andExpect(jsonPath("$.flushedLikes").value(4))
+                .andExpect(jsonPath("$.failedLikes").value(0));
+        mockMvc.perform(put("/films/2/like/1")).andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void readsDuringAFlushCountEveryLikeOnce() throws Exception {
+        createUsersAndFilms(4, 1);
+        // the flush stops after the batch is committed and the cache entry dropped, before the queued
+        // deltas are taken back
+        CountDownLatch committed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            invocation.callRealMethod();
+            committed.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(filmDao).saveLikes(anyList(), anyList());
+
+        for (int i = 1; i <= 3; i++) {
+            mockMvc.perform(put("/films/1/like/" + i)).andExpect(jsonPath("$.rate").value(i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // the fourth like fills a batch, and its own read of the film overlaps the flush
+            Future<?> like = executor.submit(() -> {
+                mockMvc.perform(put("/films/1/like/4")).andExpect(jsonPath("$.rate").value(4));
+                return null;
+            });
+            assertTrue(committed.await(10, TimeUnit.SECONDS));
+            assertEquals(4, storedRate(1));
+            Future<?> read = executor.submit(() -> {
+                mockMvc.perform(get("/films/1")).andExpect(jsonPath("$.rate").value(4));
+                return null;
+            });
+            assertThrows(TimeoutException.class, () -> read.get(200, TimeUnit.MILLISECONDS));
+            release.countDown();
+            like.get(10, TimeUnit.SECONDS);
+            read.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        mockMvc.perform(get("/films/1")).andExpect(jsonPath("$.rate").value(4));
+        mockMvc.perform(get("/films?ids=1")).andExpect(jsonPath("$.found[0].rate").value(4));
+        mockMvc.perform(get("/films/popular?count=1")).andExpect(jsonPath("$[0].rate").value(4));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void likesThatCanNotBeWrittenAreTakenBack() throws Exception {
+        createUsersAndFilms(4, 2);
+        for (int i = 1; i <= 3; i++) {
+            mockMvc.perform(put("/users/4/friends/" + i)).andExpect(status().isOk());
+        }
+        doThrow(new IllegalStateException("Database is down")).when(filmDao).saveLikes(anyList(), anyList());
+
+        mockMvc.perform(put("/films/2/like/1")).andExpect(jsonPath("$.rate").value(1));
+        // the third like fills a batch, which fails
+        mockMvc.perform(put("/films/1/like/1")).andExpect(jsonPath("$.rate").value(1));
+        mockMvc.perform(put("/films/1/like/2")).andExpect(jsonPath("$.rate").value(2));
+        mockMvc.perform(put("/films/1/like/3")).andExpect(status().isOk());
+        for (int i = 0; i < 100 && likeWriteBehind.getStats().getFailedLikes() < 4; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(4, likeWriteBehind.getStats().getFailedLikes());
+        assertEquals(0, storedLikes());
+        mockMvc.perform(get("/films/1/like/1")).andExpect(content().string("false"));
+        mockMvc.perform(get("/films/1")).andExpect(jsonPath("$.rate").value(0));
+        mockMvc.perform(get("/films")).andExpect(jsonPath("$[0].rate").value(0))
+                .andExpect(jsonPath("$[1].rate").value(0));
+        // the indexes built on the likes are reverted as well
+        mockMvc.perform(get("/films/popular?count=2"))
+                .andExpect(jsonPath("$[0].rate").value(0))
+                .andExpect(jsonPath("$[1].rate").value(0));
+        mockMvc.perform(get("/films/2/similar")).andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(get("/users/4/feed")).andExpect(jsonPath("$.length()").value(0));
+
+        // a taken back like can be given again
+        mockMvc.perform(put("/films/1/like/1")).andExpect(jsonPath("$.rate").value(1));
+        mockMvc.perform(get("/films/1/like/1")).andExpect(content().string("true"));
+    }
+
+}
@@ -0,0 +1,184 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.dao.FilmDao;
+import ru.yandex.practicum.filmorate.dao.UserDao;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@ActiveProfiles("memory")
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class InMemoryStorageTest {
+
+    private final FilmDao filmDao;
+    private final UserDao userDao;
+    private final MockMvc mockMvc;
+
+    private static String userJson(int i) {
+        return "{\"login\":\"user" + i + "\",\"email\":\"user" + i + "@usermail.ru\",\"birthday\":\"1990-01-01\"}";
+    }
+
+    private static Film film(String name) {
+        Film film = Film.builder()
+                .name(name)
+                .description("Description")
+                .releaseDate(LocalDate.of(1984, Month.NOVEMBER, 26))
+                .duration(100)
+                .mpa(new Mpa(4L, null))
+                .build();
+        film.getGenres().add(new Genre(2L, null));
+        film.getGenres().add(new Genre(1L, null));
+        return film;
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void memoryProfileServesTheApiWithoutJdbcDaos() throws Exception {
+        assertTrue(filmDao instanceof InMemoryFilmStorage);
+        assertTrue(userDao instanceof InMemoryUserStorage);
+        for (int i = 1; i <= 3; i++) {
+            mockMvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON).content(userJson(i)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id").value(i))
+                    .andExpect(jsonPath("$.name").value("user" + i));
+        }
+        mockMvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON).content(userJson(1)))
+                .andExpect(status().isInternalServerError());
+        filmDao.create(film("First"));
+        filmDao.create(film("Second"));
+
+        mockMvc.perform(put("/films/2/like/1")).andExpect(status().isOk());
+        mockMvc.perform(put("/films/2/like/1")).andExpect(status().isOk());
+        mockMvc.perform(put("/films/2/like/2")).andExpect(status().isOk());
+        mockMvc.perform(put("/films/1/like/3")).andExpect(status().isOk());
+        mockMvc
+                .perform(get("/films/2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(2))
+                .andExpect(jsonPath("$.mpa.name").value("R"))
+                .andExpect(jsonPath("$.genres[*].id").value(contains(1, 2)));
+        mockMvc
+                .perform(get("/films/popular?count=2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains(2, 1)));
+        mockMvc
+                .perform(patch("/films/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Patched\",\"genres\":[]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Patched"))
+                .andExpect(jsonPath("$.genres.length()").value(0))
+                .andExpect(jsonPath("$.rate").value(1));
+
+        mockMvc.perform(put("/users/1/friends/3")).andExpect(status().isOk());
+        mockMvc.perform(put("/users/2/friends/3")).andExpect(status().isOk());
+        mockMvc
+                .perform(get("/users/1/friends/common/2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id").value(contains(3)));
+        mockMvc
+                .perform(get("/users/1/feed"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].film.id").value(contains(1)));
+        mockMvc.perform(get("/films/9")).andExpect(status().isNotFound());
+        mockMvc.perform(put("/films/1/like/9")).andExpect(status().isNotFound());
+        mockMvc
+                .perform(get("/films/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size").value(0));
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void concurrentWritesGetUniqueIdsAndKeepEveryLike() throws Exception {
+        Long filmId = filmDao.create(film("Popular")).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Set<Long>>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int first = thread * 200;
+                futures.add(executor.submit(() -> {
+                    Set<Long> ids = new HashSet<>();
+                    for (int i = first; i < first + 200; i++) {
+                        User user = userDao.create(User.builder()
+                                .login("user" + i)
+                                .email("user" + i + "@usermail.ru")
+                                .name("User " + i)
+                                .birthday(LocalDate.of(1990, Month.JANUARY, 1))
+                                .build());
+                        ids.add(user.getId());
+                        filmDao.addLike(filmId, user.getId());
+                    }
+                    return ids;
+                }));
+            }
+            Set<Long> ids = new HashSet<>();
+            for (Future<Set<Long>> future : futures) {
+                ids.addAll(future.get());
+            }
+            assertEquals(LongStream.rangeClosed(1, 1_600).boxed().collect(Collectors.toSet()), ids);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1_600, filmDao.findFilmById(filmId).getRate());
+        assertEquals(1_600, filmDao.findLikeCounts().get(filmId));
+        assertEquals(1_600, userDao.findPage(0, 10_000).size());
+    }
+
+    @Test
+    @DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+    void rowsTheSchemaRefusesAreRefusedInMemory() {
+        User noEmail = User.builder().login("user").name("User").build();
+        assertThrows(DataIntegrityViolationException.class, () -> userDao.create(noEmail));
+        User longLogin = User.builder().login("l".repeat(41)).email("user@usermail.ru").name("User").build();
+        assertThrows(DataIntegrityViolationException.class, () -> userDao.create(longLogin));
+        User user = userDao.create(User.builder().login("user").email("user@usermail.ru").name("User").build());
+        user.setName("n".repeat(41));
+        assertThrows(DataIntegrityViolationException.class, () -> userDao.update(user));
+
+        Film noReleaseDate = film("No date");
+        noReleaseDate.setReleaseDate(null);
+        assertThrows(DataIntegrityViolationException.class, () -> filmDao.create(noReleaseDate));
+        assertThrows(DataIntegrityViolationException.class, () -> filmDao.create(film("n".repeat(101))));
+
+        assertEquals(1, userDao.findPage(0, 10).size());
+        assertEquals("User", userDao.findUserById(user.getId()).getName());
+        assertTrue(filmDao.findPage(0, 10).isEmpty());
+    }
+
+}
@@ -0,0 +1,215 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.dao.GenreDao;
+import ru.yandex.practicum.filmorate.dao.MpaDao;
+import ru.yandex.practicum.filmorate.dao.impl.DictionaryCache;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserPatch;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path dir;
+
+    private final DictionaryCache dictionaryCache = dictionaries();
+
+    private static DictionaryCache dictionaries() {
+        List<Genre> genres = List.of(new Genre(1L, "Комедия"), new Genre(2L, "Драма"));
+        List<Mpa> mpaRatings = List.of(new Mpa(1L, "G"), new Mpa(2L, "PG"));
+        DictionaryCache cache = new DictionaryCache(new GenreDao() {
+            @Override
+            public List<Genre> findAll() {
+                return genres;
+            }
+
+            @Override
+            public Genre findGenreById(Long id) {
+                return genres.get(id.intValue() - 1);
+            }
+
+            @Override
+            public void checkGenreExistence(Long id) {
+            }
+        }, new MpaDao() {
+            @Override
+            public List<Mpa> findAll() {
+                return mpaRatings;
+            }
+
+            @Override
+            public Mpa findMpaById(Long id) {
+                return mpaRatings.get(id.intValue() - 1);
+            }
+
+            @Override
+            public void checkMpaExistence(Long id) {
+            }
+        });
+        cache.reload();
+        return cache;
+    }
+
+    private static User user(int i) {
+        return User.builder()
+                .login("user" + i)
+                .email("user" + i + "@usermail.ru")
+                .name("User " + i)
+                .birthday(LocalDate.of(1990, Month.JANUARY, i))
+                .build();
+    }
+
+    private static Film film(String name) {
+        Film film = Film.builder()
+                .name(name)
+                .description("Description")
+                .releaseDate(LocalDate.of(1984, Month.NOVEMBER, 26))
+                .duration(100)
+                .mpa(new Mpa(2L, null))
+                .build();
+        film.getGenres().add(new Genre(2L, null));
+        film.getGenres().add(new Genre(1L, null));
+        return film;
+    }
+
+    private WriteAheadLog open() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(dir.toString(), true, null, null);
+        wal.start();
+        return wal;
+    }
+
+    private static List<String> likes(InMemoryFilmStorage films) {
+        List<String> likes = new ArrayList<>();
+        films.forEachLike(like -> likes.add(like.getFilmId() + "<-" + like.getUserId() + " at " + like.getLikedAt()));
+        return likes;
+    }
+
+    private static List<String> friendships(InMemoryUserStorage users) {
+        List<String> friendships = new ArrayList<>();
+        users.forEachFriendship(friendship ->
+                friendships.add(friendship.getUserId() + "->" + friendship.getFriendId()));
+        return friendships;
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void restartRestoresStateFromSnapshotAndLogTail() throws Exception {
+        WriteAheadLog wal = open();
+        InMemoryUserStorage users = new InMemoryUserStorage(wal);
+        InMemoryFilmStorage films = new InMemoryFilmStorage(users, dictionaryCache, wal);
+        for (int i = 1; i <= 3; i++) {
+            users.create(user(i));
+        }
+        films.create(film("First"));
+        films.create(film("Second"));
+        films.addLike(1L, 1L);
+        films.addLike(1L, 2L);
+        films.addLike(2L, 3L);
+        users.addFriend(1L, 2L);
+        users.addFriend(1L, 3L);
+
+        wal.snapshot(films, users);
+        assertEquals(List.of("snapshot-2.bin", "wal-2.log"), files());
+
+        films.removeLike(1L, 2L);
+        films.addLike(2L, 1L);
+        users.removeFriend(1L, 3L);
+        users.patch(2L, UserPatch.builder().name("Renamed").build());
+        Film updated = film("Updated");
+        updated.setId(2L);
+        updated.setMpa(null);
+        updated.getGenres().clear();
+        films.update(updated);
+        users.create(user(4));
+        wal.close();
+
+        List<Film> expectedFilms = films.findAll();
+        List<User> expectedUsers = users.findAll();
+        List<String> expectedLikes = likes(films);
+        List<String> expectedFriendships = friendships(users);
+
+        WriteAheadLog reopened = open();
+        InMemoryUserStorage recoveredUsers = new InMemoryUserStorage(reopened);
+        recoveredUsers.recover();
+        InMemoryFilmStorage recoveredFilms = new InMemoryFilmStorage(recoveredUsers, dictionaryCache, reopened);
+        recoveredFilms.recover();
+
+        assertEquals(expectedFilms, recoveredFilms.findAll());
+        assertEquals(expectedUsers, recoveredUsers.findAll());
+        assertEquals(expectedLikes, likes(recoveredFilms));
+        assertEquals(expectedFriendships, friendships(recoveredUsers));
+        // the snapshot of 3 users, 2 friendships, 2 films and 3 likes, then the 6 mutations logged after it
+        assertEquals(16, reopened.getLastRecoveredMutations());
+        assertEquals(16, reopened.getStats().getRecoveredMutations());
+        assertEquals(5, recoveredUsers.create(user(5)).getId());
+        assertEquals(3, recoveredFilms.create(film("Third")).getId());
+        reopened.close();
+    }
+
+    @Test
+    void tornRecordAtTheEndOfTheLogIsSkipped() throws Exception {
+        WriteAheadLog wal = open();
+        InMemoryUserStorage users = new InMemoryUserStorage(wal);
+        users.create(user(1));
+        users.create(user(2));
+        wal.close();
+        Files.write(dir.resolve("wal-1.log"), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        WriteAheadLog reopened = open();
+        InMemoryUserStorage recovered = new InMemoryUserStorage(reopened);
+        recovered.recover();
+        assertEquals(users.findAll(), recovered.findAll());
+        assertEquals(2, reopened.getLastRecoveredMutations());
+        reopened.close();
+    }
+
+    @Test
+    void changesRefusedByAClosedLogAreNotApplied() throws Exception {
+        WriteAheadLog wal = open();
+        InMemoryUserStorage users = new InMemoryUserStorage(wal);
+        InMemoryFilmStorage films = new InMemoryFilmStorage(users, dictionaryCache, wal);
+        users.create(user(1));
+        users.create(user(2));
+        films.create(film("First"));
+        users.addFriend(1L, 2L);
+        wal.close();
+
+        assertThrows(IllegalStateException.class, () -> users.create(user(3)));
+        assertThrows(IllegalStateException.class, () -> users.patch(1L, UserPatch.builder().name("Renamed").build()));
+        assertThrows(IllegalStateException.class, () -> users.removeFriend(1L, 2L));
+        assertThrows(IllegalStateException.class, () -> films.create(film("Second")));
+        assertThrows(IllegalStateException.class, () -> films.addLike(1L, 1L));
+
+        assertEquals(2, users.findAll().size());
+        assertEquals("User 1", users.findUserById(1L).getName());
+        assertEquals(List.of("1->2"), friendships(users));
+        assertEquals(1, films.findAll().size());
+        assertEquals(List.of(), likes(films));
+    }
+
+}